@@ -3,90 +3,95 @@ package Client;
 import Client.FileTransferManaging.FileTransferManager;
 import Messages.GenericMessage;
 import Messages.MessageCodePrinter;
+import Messages.MessageCodec;
+import Messages.UsernameMessage;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import javax.crypto.SecretKey;
 import java.io.*;
 import java.net.Socket;
-import java.security.*;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Scanner;
 
-import static Messages.MessageSender.sendLine;
-
 public class Client {
-    private final PrintWriter writer;
-    private final BufferedReader reader;
-    private final ObjectMapper mapper;
+    private final ServerConnection connection;
+    private final boolean binaryProtocol;
     private final KeyPairGeneration keyPairGeneration;
     private final FileTransferManager fileTransferManager;
-    private final Map<String, SecretKey> sessionKeys;
-    private final Map<String, String> storedEncryptedMessages;
+    private final SessionKeyManager sessionKeys;
+    private final CryptoEngine crypto;
+    private String username;
 
-    public Client() throws IOException, NoSuchAlgorithmException {
+    public Client(boolean binaryProtocol) throws IOException {
         keyPairGeneration = new KeyPairGeneration();
         Socket socket = new Socket("127.0.0.1", 1337);
-        InputStream inputStream = socket.getInputStream();
-        this.reader = new BufferedReader(new InputStreamReader(inputStream));
-        OutputStream outputStream = socket.getOutputStream();
-        this.writer = new PrintWriter(outputStream);
-        this.mapper = new ObjectMapper();
+        this.connection = new ServerConnection(socket.getInputStream(), socket.getOutputStream(), new MessageCodec(new ObjectMapper()));
+        this.binaryProtocol = binaryProtocol;
         this.fileTransferManager = new FileTransferManager();
-        this.sessionKeys = new HashMap<>();
-        this.storedEncryptedMessages = new HashMap<>();
+        this.sessionKeys = new SessionKeyManager(connection, keyPairGeneration::getPublicKey);
+        this.crypto = new CryptoEngine(keyPairGeneration::getPrivateKey);
     }
 
+    //Passing "binary" as the first argument switches to the binary protocol after the welcome message
     public static void main(String[] args) {
         try {
-            new Client().run();
-        } catch (IOException | NoSuchAlgorithmException e) {
+            new Client(args.length > 0 && args[0].equals("binary")).run();
+        } catch (IOException e) {
             System.err.println(e.getMessage());
             System.exit(0);
         }
     }
 
-    public void run() throws IOException, NoSuchAlgorithmException {
+    public void run() throws IOException {
         awaitWelcomeMessage();
+        if (binaryProtocol) {
+            connection.switchToBinary();
+        }
 
-        logIn();
+        username = logIn();
+        keyPairGeneration.start();
+        sessionKeys.start(username);
 
-        ServerInputThread serverInputThread = new ServerInputThread(reader, writer, mapper, fileTransferManager, this);
-        ClientInputThread clientInputThread = new ClientInputThread(writer, mapper, fileTransferManager, this);
+        ServerInputThread serverInputThread = new ServerInputThread(connection, fileTransferManager, this);
+        ClientInputThread clientInputThread = new ClientInputThread(connection, fileTransferManager, this);
         serverInputThread.start();
         clientInputThread.start();
-        //keyPairGeneration = new KeyPairGeneration();
     }
 
     private void awaitWelcomeMessage() throws IOException {
         while (true) {
-            String line = reader.readLine();
-            String[] lineParts = line.split(" ", 2);
-            if (lineParts[0].equals("WELCOME")) {
-                GenericMessage message = mapper.readValue(lineParts[1], GenericMessage.class);
+            ServerMessage welcome = connection.receive();
+            if (welcome == null) {
+                throw new EOFException("The server closed the connection");
+            }
+            if (welcome.command().equals("WELCOME")) {
+                GenericMessage message = connection.read(welcome, GenericMessage.class);
                 System.out.println(message.message());
                 return;
             }
         }
     }
 
-    private void logIn() throws IOException {
-        boolean loggedInSuccessfully = false;
-        while (!loggedInSuccessfully) {
+    //Returns the username that was logged in with
+    private String logIn() throws IOException {
+        while (true) {
             Scanner scanner = new Scanner(System.in);
             System.out.println("Please enter your username");
             String name = scanner.nextLine();
-            sendLine("LOGIN {\"username\":\"" + name + "\"}", writer);
+            connection.send("LOGIN", new UsernameMessage(name));
 
-            loggedInSuccessfully = awaitLoginResponse();
+            if (awaitLoginResponse()) {
+                return name;
+            }
         }
     }
 
     private boolean awaitLoginResponse() throws IOException {
         while (true) {
-            String line = reader.readLine();
-            if (line.startsWith("LOGIN_RESP ")) {
-                GenericMessage message = mapper.readValue(line.replaceFirst("LOGIN_RESP ", ""), GenericMessage.class);
+            ServerMessage response = connection.receive();
+            if (response == null) {
+                throw new EOFException("The server closed the connection");
+            }
+            if (response.command().equals("LOGIN_RESP")) {
+                GenericMessage message = connection.read(response, GenericMessage.class);
                 if (message.status().equals("OK")) {
                     System.out.println("Logged in successfully.");
                     System.out.println("Use the command help to see available commands.");
@@ -101,33 +106,15 @@ public class Client {
 
     public byte[] getPublicKey() {return keyPairGeneration.getPublicKey();}
 
-    public byte[] getPrivateKey() {return keyPairGeneration.getPrivateKey();}
-
-    public void addSessionKey(String username, SecretKey secretKey) {
-        sessionKeys.put(username.toLowerCase(), secretKey);
-    }
-
-    public SecretKey getSessionKey(String username) {
-        return sessionKeys.get(username.toLowerCase());
-    }
-
-    public void removeSessionKey(String username) {
-        sessionKeys.remove(username.toLowerCase());
-    }
-
-    public boolean containsSessionKey(String username) {
-        return sessionKeys.containsKey(username.toLowerCase());
-    }
-
-    public void addStoredEncryptedMessage(String username, String message) {
-        storedEncryptedMessages.put(username.toLowerCase(), message);
+    public String getUsername() {
+        return username;
     }
 
-    public String getStoredEncryptedMessage(String username) {
-        return storedEncryptedMessages.get(username.toLowerCase());
+    public CryptoEngine getCrypto() {
+        return crypto;
     }
 
-    public void removeStoredEncryptedMessage(String username) {
-        storedEncryptedMessages.remove(username.toLowerCase());
+    public SessionKeyManager getSessionKeys() {
+        return sessionKeys;
     }
 }
@@ -1,67 +1,65 @@
 package Client;
 
+import Client.FileTransferManaging.ChecksumAlgorithm;
+import Client.FileTransferManaging.Compression;
+import Client.FileTransferManaging.ChunkedTransfer;
 import Client.FileTransferManaging.FileReceiverThread;
 import Client.FileTransferManaging.FileTransferManager;
+import Client.FileTransferManaging.TransferProgress;
 import Messages.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import javax.crypto.BadPaddingException;
-import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
+import java.security.GeneralSecurityException;
 import java.util.Scanner;
 import java.util.UUID;
 
-import static Client.FileTransferManaging.ChecksumGenerator.generateChecksum;
-import static Messages.MessageSender.sendLine;
-
 public class ClientInputThread extends Thread {
-    private final PrintWriter writer;
-    private final ObjectMapper mapper;
+    private final ServerConnection connection;
     private final FileTransferManager fileTransferManager;
     private final Client client;
 
-    ClientInputThread(PrintWriter writer, ObjectMapper mapper, FileTransferManager fileTransferManager, Client client) {
-        this.writer = writer;
-        this.mapper = mapper;
+    ClientInputThread(ServerConnection connection, FileTransferManager fileTransferManager, Client client) {
+        this.connection = connection;
         this.fileTransferManager = fileTransferManager;
         this.client = client;
     }
 
     @Override
     public void run() {
+        //One scanner for all lines, a new one per line would drop what the previous one had buffered
+        Scanner scanner = new Scanner(System.in);
         while (true) {
-            Scanner scanner = new Scanner(System.in);
             String message = scanner.nextLine();
             if (message.equals("help")) {
                 MessageCodePrinter.printHelpMessage();
             } else if (message.equals("logout")) {
-                sendLine("BYE", writer);
+                connection.send("BYE");
                 break;
             } else if (message.startsWith("broadcast ")) {
                 requestBroadcast(message.replaceFirst("broadcast ", ""));
             } else if (message.equals("list_users")) {
-                sendLine("LIST_USERS_REQ", writer);
+                connection.send("LIST_USERS_REQ");
             } else if (message.startsWith("private_message ")) {
                 requestPrivateMessage(message.replaceFirst("private_message ", ""));
-            } else if (message.equals("number_setup")) {
-                sendLine("NUMBER_SETUP_REQ", writer);
-            } else if (message.equals("number_join")) {
-                sendLine("NUMBER_JOIN_REQ", writer);
+            } else if (message.equals("number_setup") || message.startsWith("number_setup ")) {
+                requestNumberGame("NUMBER_SETUP_REQ", message.replaceFirst("number_setup", ""));
+            } else if (message.equals("number_join") || message.startsWith("number_join ")) {
+                requestNumberGame("NUMBER_JOIN_REQ", message.replaceFirst("number_join", ""));
             } else if (message.startsWith("number_guess ")) {
                 guessNumber(message.replaceFirst("number_guess ", ""));
+            } else if (message.equals("leaderboard") || message.startsWith("leaderboard ")) {
+                requestLeaderboard(message.replaceFirst("leaderboard", "").trim());
             } else if (message.startsWith("file_transfer ")) {
                 requestFileTransfer(message.replaceFirst("file_transfer ", ""));
             } else if (message.startsWith("file_accept ")) {
                 acceptFileTransfer(message.replaceFirst("file_accept ", ""));
             } else if (message.startsWith("file_decline ")) {
                 declineFileTransfer(message.replaceFirst("file_decline ", ""));
+            } else if (message.equals("file_progress")) {
+                showFileProgress();
             } else if (message.startsWith("encrypted_private_message ")) {
                 requestEncryptedPrivateMessage(message.replaceFirst("encrypted_private_message ", ""));
             } else {
@@ -73,12 +71,12 @@ public class ClientInputThread extends Thread {
     private void requestBroadcast(String message) {
         try {
             if (!message.isEmpty()) {
-                sendLine("BROADCAST_REQ " + mapper.writeValueAsString(new BroadcastRequestMessage(message)), writer);
+                connection.send("BROADCAST_REQ", new BroadcastRequestMessage(message));
             } else {
                 System.err.println("Message is empty");
             }
         } catch (JsonProcessingException e) {
-            sendLine("PARSE_ERROR", writer);
+            connection.send("PARSE_ERROR");
         }
     }
 
@@ -88,7 +86,8 @@ public class ClientInputThread extends Thread {
                 String[] parsedRequest = messageAndUsername.split(" ", 2);
                 String username = parsedRequest[0];
                 String messageToSend = parsedRequest[1];
-                sendLine("PRIVATE_MESSAGE_REQ " + mapper.writeValueAsString(new BroadcastMessage(username, messageToSend)), writer);
+                connection.send("PRIVATE_MESSAGE_REQ", new BroadcastMessage(username, messageToSend));
+                client.getSessionKeys().contact(username);
             } else {
                 System.err.println("Invalid message provided");
             }
@@ -97,11 +96,46 @@ public class ClientInputThread extends Thread {
         }
     }
 
+    //Without an id the command is about the game without an id
+    private void requestNumberGame(String command, String id) {
+        try {
+            if (id.isBlank()) {
+                connection.send(command);
+            } else {
+                connection.send(command, new NumberGameMessage(id.trim()));
+            }
+        } catch (JsonProcessingException e) {
+            connection.send("PARSE_ERROR");
+        }
+    }
+
     private void guessNumber(String message) {
-        if (!message.isEmpty()) {
-            sendLine("NUMBER_GUESS_REQ {\"number\":\"" + message + "\"}", writer);
-        } else {
-            System.err.println("No number given");
+        try {
+            if (!message.isEmpty()) {
+                String[] parsedRequest = message.trim().split(" ", 2);
+                String id = parsedRequest.length > 1 ? parsedRequest[1].trim() : null;
+                //The binary protocol can only carry a number, so the guess is checked here for both protocols
+                connection.send("NUMBER_GUESS_REQ", new NumberGuess(Integer.parseInt(parsedRequest[0]), id));
+            } else {
+                System.err.println("No number given");
+            }
+        } catch (NumberFormatException e) {
+            MessageCodePrinter.printMessageFromCode(6005);
+        } catch (JsonProcessingException e) {
+            connection.send("PARSE_ERROR");
+        }
+    }
+
+    //Without a username the leaderboard of all players is asked for
+    private void requestLeaderboard(String username) {
+        try {
+            if (username.isEmpty()) {
+                connection.send("LEADERBOARD_REQ");
+            } else {
+                connection.send("LEADERBOARD_REQ", new UsernameMessage(username));
+            }
+        } catch (JsonProcessingException e) {
+            connection.send("PARSE_ERROR");
         }
     }
 
@@ -118,16 +152,22 @@ public class ClientInputThread extends Thread {
                     long filesize = file.length() / 10;
                     int kb = (int) filesize;
                     String id = UUID.randomUUID().toString();
-                    String checksum = generateChecksum(file);
-
-                    fileTransferManager.addPendingFileSendRequest(username, id, file);
-
-                    FileTransferRequestMessage requestMessage = new FileTransferRequestMessage(username, filename, kb, id, checksum);
-                    sendLine("FILE_TRANSFER_REQ " + mapper.writeValueAsString(requestMessage), writer);
+                    int chunkSize = ChunkedTransfer.chunkSize();
+                    int streams = ChunkedTransfer.streams();
+                    //The file is digested while it is sent, so the request goes out without reading it first.
+                    //Chunks are sent with their digests, a file sent as one stream is followed by its digest
+                    ChecksumAlgorithm algorithm = ChecksumAlgorithm.configured();
+                    //Only chunks are compressed
+                    Compression compression = chunkSize > 0 ? Compression.configured() : Compression.NONE;
+                    String compressionName = compression == Compression.NONE ? null : compression.name();
+                    fileTransferManager.addPendingFileSendRequest(username, id, file, chunkSize, streams, algorithm, compression);
+
+                    FileTransferRequestMessage requestMessage = new FileTransferRequestMessage(username, filename, kb, id, null, chunkSize, streams, algorithm.getName(), compressionName);
+                    connection.send("FILE_TRANSFER_REQ", requestMessage);
                     System.out.println("File transfer request sent successfully.");
 
-                    FileTransferRequestMessage testMessage = new FileTransferRequestMessage("testMessage", filename, kb, id, checksum);
-                    sendLine("FILE_TRANSFER_REQ " + mapper.writeValueAsString(testMessage), writer);
+                    FileTransferRequestMessage testMessage = new FileTransferRequestMessage("testMessage", filename, kb, id, null, chunkSize, streams, algorithm.getName(), compressionName);
+                    connection.send("FILE_TRANSFER_REQ", testMessage);
                     System.out.println("Sent test message.");
                 } else {
                     System.err.println("Couldn't find this file");
@@ -143,27 +183,36 @@ public class ClientInputThread extends Thread {
     private void acceptFileTransfer(String message) {
         try {
             if (fileTransferManager.receiveRequestExists(message)) {
-                sendLine("FILE_TRANSFER_RESP " + mapper.writeValueAsString(new RecipientFileTransferResponseMessage(message, 1)), writer);
+                connection.send("FILE_TRANSFER_RESP", new RecipientFileTransferResponseMessage(message, 1));
                 new FileReceiverThread(fileTransferManager, message).start();
                 System.out.println("File transfer request accepted");
             } else {
                 System.err.println("No pending file transfer request from this user or this user is not connected");
             }
         } catch (JsonProcessingException e) {
-            sendLine("PARSE_ERROR", writer);
+            connection.send("PARSE_ERROR");
+        }
+    }
+
+    private void showFileProgress() {
+        if (fileTransferManager.getActiveTransfers().isEmpty()) {
+            System.out.println("No file transfers in progress.");
+        }
+        for (TransferProgress progress : fileTransferManager.getActiveTransfers()) {
+            System.out.println(progress.describe());
         }
     }
 
     private void declineFileTransfer(String message) {
         try {
             if (fileTransferManager.receiveRequestExists(message)) {
-                sendLine("FILE_TRANSFER_RESP " + mapper.writeValueAsString(new RecipientFileTransferResponseMessage(message, 0)), writer);
+                connection.send("FILE_TRANSFER_RESP", new RecipientFileTransferResponseMessage(message, 0));
                 System.out.println("File transfer request declined.");
             } else {
                 System.err.println("No pending file transfer request from this user or this user is not connected");
             }
         } catch (JsonProcessingException e) {
-            sendLine("PARSE_ERROR", writer);
+            connection.send("PARSE_ERROR");
         }
     }
 
@@ -173,23 +222,19 @@ public class ClientInputThread extends Thread {
                 String[] parsedRequest = messageAndUsername.split(" ", 2);
                 String username = parsedRequest[0];
                 String messageToSend = parsedRequest[1];
-                if (client.containsSessionKey(username)) {
-                    Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-                    cipher.init(Cipher.ENCRYPT_MODE, client.getSessionKey(username));
-                    byte[] encryptedMessage = cipher.doFinal(messageToSend.getBytes());
-                    sendLine("ENCRYPTED_MESSAGE_REQ " + mapper.writeValueAsString(new EncryptedPrivateMessage(username, encryptedMessage)), writer);
+                SecretKey sessionKey = client.getSessionKeys().keyFor(username);
+                if (sessionKey != null) {
+                    byte[] encryptedMessage = client.getCrypto().encrypt(sessionKey, messageToSend, client.getUsername(), username);
+                    connection.send("ENCRYPTED_MESSAGE_REQ", new EncryptedPrivateMessage(username, encryptedMessage));
                 } else {
-                    client.addStoredEncryptedMessage(username, messageToSend);
-                    sendLine("PUBLIC_KEY " + mapper.writeValueAsString(new KeyMessage(username, client.getPublicKey())), writer);
+                    client.getSessionKeys().queue(username, messageToSend);
                 }
             } else {
                 System.err.println("Invalid message provided");
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             System.err.println("Invalid message provided");
-        } catch (NoSuchPaddingException | NoSuchAlgorithmException | InvalidKeyException | IllegalBlockSizeException |
-                 BadPaddingException |
-                 JsonProcessingException e) {
+        } catch (GeneralSecurityException | JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
@@ -0,0 +1,126 @@
+package Client;
+
+import javax.crypto.*;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+//The cryptography of the encrypted private messages. Looking up a Cipher or KeyFactory and parsing a key cost more
+//than encrypting a chat message, so the parsed keys are kept and every thread reuses its own Cipher objects
+//
+//Messages are encrypted with AES-GCM, which also detects a message that was changed on the way. Every message gets a
+//random nonce, sent in front of the ciphertext and its tag. The sender and the recipient are authenticated along with
+//the message, so a message can't be passed off as coming from someone else or sent back to the one who wrote it
+public class CryptoEngine {
+    private static final String MESSAGE_CIPHER = "AES/GCM/NoPadding";
+    private static final int NONCE_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int SESSION_KEY_BITS = 128;
+    //Asked for when the first session key is unwrapped, the key pair may still be being generated until then
+    private final Supplier<PrivateKey> privateKey;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Cipher> messageCiphers = ThreadLocal.withInitial(() -> cipher(MESSAGE_CIPHER));
+    private final ThreadLocal<Cipher> keyCiphers = ThreadLocal.withInitial(() -> cipher("RSA"));
+    private final KeyFactory keyFactory;
+    private final KeyGenerator keyGenerator;
+    //The public keys of the peers, by username, with the bytes they were parsed from
+    private final Map<String, PeerKey> peerKeys = new ConcurrentHashMap<>();
+
+    public CryptoEngine(Supplier<PrivateKey> privateKey) {
+        this.privateKey = privateKey;
+        try {
+            this.keyFactory = KeyFactory.getInstance("RSA");
+            this.keyGenerator = KeyGenerator.getInstance("AES");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        this.keyGenerator.init(SESSION_KEY_BITS, random);
+    }
+
+    //Returns the nonce followed by the ciphertext and the tag
+    public byte[] encrypt(SecretKey sessionKey, String message, String sender, String recipient) throws GeneralSecurityException {
+        byte[] plaintext = message.getBytes(StandardCharsets.UTF_8);
+        byte[] encrypted = new byte[NONCE_LENGTH + plaintext.length + TAG_BITS / 8];
+        byte[] nonce = new byte[NONCE_LENGTH];
+        random.nextBytes(nonce);
+        System.arraycopy(nonce, 0, encrypted, 0, NONCE_LENGTH);
+
+        Cipher cipher = messageCiphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, sessionKey, new GCMParameterSpec(TAG_BITS, nonce));
+        cipher.updateAAD(associatedData(sender, recipient));
+        cipher.doFinal(plaintext, 0, plaintext.length, encrypted, NONCE_LENGTH);
+        return encrypted;
+    }
+
+    //Throws AEADBadTagException when the message wasn't encrypted with this key, or was changed
+    public String decrypt(SecretKey sessionKey, byte[] encrypted, String sender, String recipient) throws GeneralSecurityException {
+        if (encrypted.length < NONCE_LENGTH + TAG_BITS / 8) {
+            throw new AEADBadTagException("Message too short");
+        }
+        Cipher cipher = messageCiphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, sessionKey, new GCMParameterSpec(TAG_BITS, encrypted, 0, NONCE_LENGTH));
+        cipher.updateAAD(associatedData(sender, recipient));
+        byte[] plaintext = cipher.doFinal(encrypted, NONCE_LENGTH, encrypted.length - NONCE_LENGTH);
+        return new String(plaintext, StandardCharsets.UTF_8);
+    }
+
+    public SecretKey newSessionKey() {
+        synchronized (keyGenerator) {
+            return keyGenerator.generateKey();
+        }
+    }
+
+    //Encrypts the session key with the user's public key
+    public byte[] wrap(String username, byte[] publicKey, SecretKey sessionKey) throws GeneralSecurityException {
+        Cipher cipher = keyCiphers.get();
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey(username, publicKey));
+        return cipher.doFinal(sessionKey.getEncoded());
+    }
+
+    //Decrypts a session key that was encrypted with our public key
+    public SecretKey unwrap(byte[] wrappedKey) throws GeneralSecurityException {
+        Cipher cipher = keyCiphers.get();
+        cipher.init(Cipher.DECRYPT_MODE, privateKey.get());
+        return new SecretKeySpec(cipher.doFinal(wrappedKey), "AES");
+    }
+
+    //Called when the user leaves, the next user with the name has another key
+    public void forget(String username) {
+        peerKeys.remove(username.toLowerCase());
+    }
+
+    //Parses a public key only when the user sends another one than last time
+    private PublicKey publicKey(String username, byte[] encoded) throws GeneralSecurityException {
+        PeerKey known = peerKeys.get(username.toLowerCase());
+        if (known != null && Arrays.equals(known.encoded(), encoded)) {
+            return known.key();
+        }
+        PublicKey key;
+        synchronized (keyFactory) {
+            key = keyFactory.generatePublic(new X509EncodedKeySpec(encoded));
+        }
+        peerKeys.put(username.toLowerCase(), new PeerKey(encoded.clone(), key));
+        return key;
+    }
+
+    private static byte[] associatedData(String sender, String recipient) {
+        return (sender.toLowerCase() + "\n" + recipient.toLowerCase()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Cipher cipher(String transformation) {
+        try {
+            return Cipher.getInstance(transformation);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private record PeerKey(byte[] encoded, PublicKey key) {
+    }
+}
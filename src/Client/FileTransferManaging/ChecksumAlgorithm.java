@@ -0,0 +1,96 @@
+package Client.FileTransferManaging;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+//The checksums a file transfer can be verified with. CRC32C is computed by the CPU's crc instructions, SHA-256 makes an
+//undetected corruption practically impossible. The digests travel through the relay with the bytes they are for, so
+//they protect against corruption, not against a relay that changes the file on purpose. MD5 is what clients that
+//don't name an algorithm use
+public enum ChecksumAlgorithm {
+    CRC32C("CRC32C"),
+    MD5("MD5"),
+    SHA_256("SHA-256");
+
+    private final String name;
+
+    ChecksumAlgorithm(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //A null name is MD5, throws IllegalArgumentException for algorithms this client doesn't know
+    public static ChecksumAlgorithm forName(String name) {
+        if (name == null) {
+            return MD5;
+        }
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.name.equalsIgnoreCase(name)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum algorithm " + name);
+    }
+
+    //The algorithm new transfers are verified with
+    public static ChecksumAlgorithm configured() {
+        return forName(System.getProperty("transfer.checksum", CRC32C.name));
+    }
+
+    public MessageDigest newDigest() {
+        if (this == CRC32C) {
+            return new Crc32cDigest();
+        }
+        try {
+            return MessageDigest.getInstance(name);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //CRC32C behind the MessageDigest interface, so the transfers can update and compare every algorithm the same way
+    private static final class Crc32cDigest extends MessageDigest {
+        private final CRC32C crc = new CRC32C();
+
+        Crc32cDigest() {
+            super("CRC32C");
+        }
+
+        @Override
+        protected int engineGetDigestLength() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        protected void engineUpdate(byte input) {
+            crc.update(input);
+        }
+
+        @Override
+        protected void engineUpdate(byte[] input, int offset, int length) {
+            crc.update(input, offset, length);
+        }
+
+        @Override
+        protected void engineUpdate(ByteBuffer input) {
+            crc.update(input);
+        }
+
+        @Override
+        protected byte[] engineDigest() {
+            int value = (int) crc.getValue();
+            crc.reset();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        protected void engineReset() {
+            crc.reset();
+        }
+    }
+}
@@ -4,14 +4,16 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public interface ChecksumGenerator {
+    int BUFFER_SIZE = 1024 * 1024;
+
+    //A separate pass over a file, the transfers themselves digest the bytes while they are sent
     static String generateChecksum(File file) throws IOException {
-        try {
-            FileInputStream fileInputStream = new FileInputStream(file);
-            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
-            byte[] buffer = new byte[1024];
+        try (FileInputStream fileInputStream = new FileInputStream(file)) {
+            MessageDigest messageDigest = ChecksumAlgorithm.MD5.newDigest();
+            byte[] buffer = new byte[BUFFER_SIZE];
 
             //Read bytes from the fileInputStream until none remain
             //When none remain the amount of bytes read will be -1, which means the loop should be stopped
@@ -19,16 +21,11 @@ public interface ChecksumGenerator {
             while ((n = fileInputStream.read(buffer)) != -1) {
                 messageDigest.update(buffer, 0, n);
             }
-            byte[] digest = messageDigest.digest();
-
-            //Convert the digest to a hexadecimal string
-            StringBuilder stringBuilder = new StringBuilder();
-            for (byte b : digest) {
-                stringBuilder.append(String.format("%02x", b & 0xff));
-            }
-            return stringBuilder.toString();
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            return toHex(messageDigest.digest());
         }
     }
+
+    static String toHex(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
 }
@@ -0,0 +1,60 @@
+package Client.FileTransferManaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+//Where one receiver puts its chunks. Without mapping a chunk is read into a direct buffer and then written at its
+//offset. With mapping it is read straight into a memory-mapped region of the file, which saves copying it again. A
+//corrupt chunk is then already in the file, but it is overwritten when it is fetched again and the transfer doesn't
+//succeed before it is. The file must have its full length before chunks are mapped
+class ChunkFile {
+    private static final long REGION_SIZE = 64 * 1024 * 1024;
+    private final FileChannel channel;
+    private final long length;
+    private final boolean mapped;
+    private final FsyncPolicy fsyncPolicy;
+    private final ByteBuffer buffer;
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    ChunkFile(FileChannel channel, long length, int chunkSize, boolean mapped, FsyncPolicy fsyncPolicy) {
+        this.channel = channel;
+        this.length = length;
+        this.mapped = mapped;
+        this.fsyncPolicy = fsyncPolicy;
+        this.buffer = mapped ? null : ByteBuffer.allocateDirect(chunkSize);
+    }
+
+    //The buffer the chunk at the offset is read into
+    ByteBuffer buffer(long offset, int size) throws IOException {
+        if (!mapped) {
+            return buffer.clear().limit(size);
+        }
+        if (region == null || offset < regionStart || offset + size > regionStart + region.capacity()) {
+            //Regions are mapped from the first chunk that doesn't fit the current one, so chunks received in order
+            //need one mapping per region
+            regionStart = offset;
+            region = channel.map(FileChannel.MapMode.READ_WRITE, offset, Math.max(size, Math.min(REGION_SIZE, length - offset)));
+        }
+        return region.slice((int) (offset - regionStart), size);
+    }
+
+    //Stores the chunk after its digest matched, the buffer is the one returned for it with its bytes read
+    void write(ByteBuffer chunk, long offset) throws IOException {
+        if (mapped) {
+            if (fsyncPolicy == FsyncPolicy.CHUNK) {
+                ((MappedByteBuffer) chunk).force();
+            }
+            return;
+        }
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            channel.write(chunk, offset + chunk.position());
+        }
+        if (fsyncPolicy == FsyncPolicy.CHUNK) {
+            channel.force(false);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package Client.FileTransferManaging;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+//Receives the range of chunks of one stream of a chunked transfer and writes them at their offsets. After a dropped
+//connection only the part that is still missing is asked for, chunks whose digest doesn't match are fetched again one
+//at a time. Deflated chunks are read into a buffer of their own and inflated into the buffer the chunk belongs in
+class ChunkReceiver extends Thread {
+    private static final int MAX_CHUNK_FETCHES = 3;
+    private final RandomAccessFile file;
+    private final String id;
+    private final int streams;
+    private final int stream;
+    private final ChecksumAlgorithm algorithm;
+    private final Compression compression;
+    private final FsyncPolicy fsyncPolicy;
+    private final TransferProgress progress;
+    //Every chunk between the start of the range and received has been written or is in corruptChunks
+    private long received = -1;
+    private final TreeSet<Long> corruptChunks = new TreeSet<>();
+    private final Map<Long, Integer> fetches = new HashMap<>();
+    private boolean succeeded = false;
+    private Inflater inflater;
+    private ByteBuffer encoded;
+
+    ChunkReceiver(RandomAccessFile file, String id, int streams, int stream, ChecksumAlgorithm algorithm, Compression compression, FsyncPolicy fsyncPolicy, TransferProgress progress) {
+        this.file = file;
+        this.id = id;
+        this.streams = streams;
+        this.stream = stream;
+        this.algorithm = algorithm;
+        this.compression = compression;
+        this.fsyncPolicy = fsyncPolicy;
+        this.progress = progress;
+    }
+
+    //Whether every chunk of the range was received intact, read after joining the thread
+    boolean succeeded() {
+        return succeeded;
+    }
+
+    @Override
+    public void run() {
+        MessageDigest digest = algorithm.newDigest();
+        ByteBuffer header = ByteBuffer.allocate(ChunkedTransfer.chunkHeaderSize(digest, compression));
+        ByteBuffer request = ByteBuffer.allocate(ChunkedTransfer.REQUEST_SIZE);
+        if (compression == Compression.DEFLATE) {
+            inflater = new Inflater(true);
+        }
+        try {
+            receive(header, request, digest);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    private void receive(ByteBuffer header, ByteBuffer request, MessageDigest digest) {
+        for (int attempt = 1; ; attempt++) {
+            try (SocketChannel socket = ChunkedTransfer.connect('R', ChunkedTransfer.streamId(id, stream))) {
+                ByteBuffer fileHeader = ByteBuffer.allocate(ChunkedTransfer.FILE_HEADER_SIZE);
+                ChunkedTransfer.readFully(socket, fileHeader);
+                long length = fileHeader.flip().getLong();
+                int chunkSize = fileHeader.getInt();
+                if (chunkSize <= 0 || chunkSize > ChunkedTransfer.MAX_CHUNK_SIZE || length < 0) {
+                    System.err.println("Invalid chunked transfer");
+                    return;
+                }
+                long start = ChunkedTransfer.rangeStart(length, chunkSize, streams, stream);
+                long end = ChunkedTransfer.rangeStart(length, chunkSize, streams, stream + 1);
+                if (received == -1) {
+                    received = start;
+                } else if (received > start) {
+                    System.out.println("Resuming at " + (received - start) * 100 / Math.max(end - start, 1) + "% of stream " + (stream + 1) + ".");
+                }
+                preallocate(length);
+                progress.setTotal(length);
+                ChunkFile chunkFile = new ChunkFile(file.getChannel(), length, chunkSize, ChunkedTransfer.mapped(), fsyncPolicy);
+
+                if (received < end) {
+                    request(socket, request, received, end - received);
+                    while (received < end) {
+                        long offset = receiveChunk(socket, header, chunkFile, digest, length, chunkSize);
+                        if (offset != received) {
+                            throw new IOException("Chunk out of order");
+                        }
+                        received = Math.min(received + chunkSize, end);
+                    }
+                }
+                while (!corruptChunks.isEmpty()) {
+                    long offset = corruptChunks.first();
+                    if (fetches.merge(offset, 1, Integer::sum) > MAX_CHUNK_FETCHES) {
+                        System.err.println("Chunk at " + offset + " stays corrupt, giving up.");
+                        return;
+                    }
+                    request(socket, request, offset, chunkSize);
+                    receiveChunk(socket, header, chunkFile, digest, length, chunkSize);
+                }
+                request(socket, request, 0, 0);
+                succeeded = true;
+                return;
+            } catch (IOException e) {
+                if (!ChunkedTransfer.retry(attempt, e)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    //All streams share the file, the first one to know the length sizes it. Java can't reserve the blocks themselves,
+    //but sizing the file once keeps it from growing chunk by chunk and lets the regions be mapped
+    private void preallocate(long length) throws IOException {
+        synchronized (file) {
+            if (file.length() != length) {
+                file.setLength(length);
+            }
+        }
+    }
+
+    private void request(SocketChannel socket, ByteBuffer request, long offset, long length) throws IOException {
+        request.clear().putLong(offset).putLong(length).flip();
+        ChunkedTransfer.writeFully(socket, request);
+    }
+
+    //Stores the chunk when its digest matches and marks it corrupt otherwise, returns its offset
+    private long receiveChunk(SocketChannel socket, ByteBuffer header, ChunkFile chunkFile, MessageDigest digest, long length, int chunkSize) throws IOException {
+        header.clear();
+        ChunkedTransfer.readFully(socket, header);
+        header.flip();
+        long offset = header.getLong();
+        int size = header.getInt();
+        int sent = compression == Compression.NONE ? size : header.getInt();
+        if (size <= 0 || size > chunkSize || offset < 0 || offset + size > length || sent <= 0 || sent > size) {
+            throw new IOException("Invalid chunk");
+        }
+        byte[] expected = new byte[digest.getDigestLength()];
+        header.get(expected);
+
+        ByteBuffer chunk = chunkFile.buffer(offset, size);
+        boolean inflated = true;
+        if (sent == size) {
+            ChunkedTransfer.readFully(socket, chunk);
+        } else {
+            if (encoded == null) {
+                encoded = ByteBuffer.allocateDirect(chunkSize);
+            }
+            encoded.clear().limit(sent);
+            ChunkedTransfer.readFully(socket, encoded);
+            inflated = inflate(encoded.flip(), chunk);
+        }
+        digest.update(chunk.flip());
+        byte[] actual = digest.digest();
+        if (inflated && MessageDigest.isEqual(expected, actual)) {
+            chunkFile.write(chunk, offset);
+            corruptChunks.remove(offset);
+            progress.add(size, sent);
+        } else {
+            System.err.println("Chunk at " + offset + " is corrupt, fetching it again.");
+            corruptChunks.add(offset);
+        }
+        return offset;
+    }
+
+    //Returns whether the bytes inflate to exactly the chunk, a chunk that doesn't is handled like one whose digest
+    //doesn't match
+    private boolean inflate(ByteBuffer encoded, ByteBuffer chunk) {
+        inflater.reset();
+        inflater.setInput(encoded);
+        try {
+            while (!inflater.finished()) {
+                boolean full = !chunk.hasRemaining();
+                if (inflater.inflate(chunk) == 0 && !inflater.finished() && (full || inflater.needsInput())) {
+                    return false;
+                }
+            }
+        } catch (DataFormatException e) {
+            return false;
+        }
+        return !chunk.hasRemaining();
+    }
+}
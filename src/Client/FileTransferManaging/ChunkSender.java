@@ -0,0 +1,134 @@
+package Client.FileTransferManaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.util.zip.Deflater;
+
+//Serves the chunks one stream of a chunked transfer asks for. The streams of a transfer share the file channel, they
+//only use positional reads so they don't move each other's position. A chunk is read into a direct buffer, digested
+//there and written to the socket together with its header in one gathering write
+//
+//With compression every chunk is deflated into a second direct buffer, and sent as it is when that doesn't save
+//enough. The first chunk of the stream decides whether the others are tried: when it doesn't compress, the file is
+//taken to be compressed already, like media or archives, and the rest is sent without spending CPU on it
+class ChunkSender extends Thread {
+    private final FileChannel file;
+    private final String id;
+    private final int chunkSize;
+    private final ChecksumAlgorithm algorithm;
+    private final Compression compression;
+    private final TransferProgress progress;
+    private Deflater deflater;
+    private ByteBuffer deflated;
+    private boolean sampled = false;
+
+    ChunkSender(FileChannel file, String id, int chunkSize, ChecksumAlgorithm algorithm, Compression compression, TransferProgress progress) {
+        this.file = file;
+        this.id = id;
+        this.chunkSize = chunkSize;
+        this.algorithm = algorithm;
+        this.compression = compression;
+        this.progress = progress;
+    }
+
+    //Serves ranges until the receiver ends the transfer, connecting again when the connection drops
+    @Override
+    public void run() {
+        ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+        MessageDigest digest = algorithm.newDigest();
+        ByteBuffer header = ByteBuffer.allocate(ChunkedTransfer.chunkHeaderSize(digest, compression));
+        ByteBuffer request = ByteBuffer.allocate(ChunkedTransfer.REQUEST_SIZE);
+        if (compression == Compression.DEFLATE) {
+            deflater = new Deflater(Deflater.BEST_SPEED, true);
+            deflated = ByteBuffer.allocateDirect(chunkSize);
+        }
+        try {
+            serve(chunk, header, request, digest);
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    private void serve(ByteBuffer chunk, ByteBuffer header, ByteBuffer request, MessageDigest digest) {
+        for (int attempt = 1; ; attempt++) {
+            try (SocketChannel socket = ChunkedTransfer.connect('W', id)) {
+                ByteBuffer fileHeader = ByteBuffer.allocate(ChunkedTransfer.FILE_HEADER_SIZE);
+                fileHeader.putLong(file.size()).putInt(chunkSize).flip();
+                ChunkedTransfer.writeFully(socket, fileHeader);
+
+                while (true) {
+                    request.clear();
+                    ChunkedTransfer.readFully(socket, request);
+                    long offset = request.flip().getLong();
+                    long length = request.getLong();
+                    if (length == 0) {
+                        return;
+                    }
+                    sendRange(socket, offset, length, chunk, header, digest);
+                }
+            } catch (IOException e) {
+                if (!ChunkedTransfer.retry(attempt, e)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void sendRange(SocketChannel socket, long offset, long length, ByteBuffer chunk, ByteBuffer header, MessageDigest digest) throws IOException {
+        long end = Math.min(offset + length, file.size());
+        if (offset < 0 || offset % chunkSize != 0) {
+            throw new IOException("Invalid range requested");
+        }
+        for (long position = offset; position < end; position += chunkSize) {
+            int size = (int) Math.min(chunkSize, end - position);
+            chunk.clear().limit(size);
+            while (chunk.hasRemaining()) {
+                if (file.read(chunk, position + chunk.position()) == -1) {
+                    throw new EOFException("File is shorter than when the transfer started");
+                }
+            }
+            digest.update(chunk.flip());
+            header.clear().putLong(position).putInt(size);
+            ByteBuffer payload = chunk.rewind();
+            if (compression != Compression.NONE) {
+                payload = encode(chunk);
+                header.putInt(payload.remaining());
+            }
+            header.put(digest.digest()).flip();
+            int sent = payload.remaining();
+            ChunkedTransfer.writeFully(socket, header, payload);
+            progress.add(size, sent);
+        }
+    }
+
+    //Returns the deflated chunk, or the chunk itself when deflating it doesn't save enough or isn't tried anymore
+    private ByteBuffer encode(ByteBuffer chunk) {
+        if (deflater == null) {
+            return chunk;
+        }
+        deflater.reset();
+        deflater.setInput(chunk);
+        deflater.finish();
+        deflated.clear();
+        while (!deflater.finished() && deflated.hasRemaining()) {
+            deflater.deflate(deflated);
+        }
+        chunk.rewind();
+        boolean smaller = deflater.finished() && deflated.position() <= chunk.remaining() * Compression.MAX_RATIO;
+        if (!sampled) {
+            sampled = true;
+            if (!smaller) {
+                deflater.end();
+                deflater = null;
+                return chunk;
+            }
+        }
+        return smaller ? deflated.flip() : chunk;
+    }
+}
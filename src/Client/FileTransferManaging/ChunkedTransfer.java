@@ -0,0 +1,98 @@
+package Client.FileTransferManaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+//The protocol of a chunked transfer, spoken through the relay after an 'R' or 'W' handshake. The sender starts with
+//the length of the file and the chunk size. The receiver then asks for ranges of the file, as a long offset and a
+//long length, and a length of 0 ends the transfer. Every chunk is sent as its offset, its length, the digest of its
+//bytes in the transfer's ChecksumAlgorithm and the bytes. When the transfer is compressed, the length is followed by
+//the number of bytes sent for the chunk, which are deflated when there are fewer of them than its length. When the
+//connection drops, both sides connect again with the same id and the receiver asks for the part it doesn't have yet
+//
+//A transfer can be split over several streams, each its own relay connection. Every stream receives a contiguous
+//range of chunks, the first one uses the id of the transfer and the others ids derived from it
+public interface ChunkedTransfer {
+    int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    int BUFFER_SIZE = 1024 * 1024;
+    int FILE_HEADER_SIZE = Long.BYTES + Integer.BYTES;
+    int REQUEST_SIZE = 2 * Long.BYTES;
+    int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    int MAX_ATTEMPTS = 5;
+    long RETRY_DELAY_MS = 1000;
+
+    //The chunk size new transfers are offered with, 0 sends files as one stream
+    static int chunkSize() {
+        return Integer.getInteger("transfer.chunk.size", DEFAULT_CHUNK_SIZE);
+    }
+
+    //The number of streams new chunked transfers are split over
+    static int streams() {
+        return Math.max(1, Integer.getInteger("transfer.streams", 1));
+    }
+
+    static String streamId(String id, int stream) {
+        return stream == 0 ? id : UUID.nameUUIDFromBytes((id + "/" + stream).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    //The first offset of the range a stream receives, the range ends where the range of the next stream begins
+    static long rangeStart(long length, int chunkSize, int streams, int stream) {
+        long chunks = (length + chunkSize - 1) / chunkSize;
+        return Math.min(length, chunks * stream / streams * chunkSize);
+    }
+
+    static int chunkHeaderSize(MessageDigest digest, Compression compression) {
+        return Long.BYTES + Integer.BYTES + (compression == Compression.NONE ? 0 : Integer.BYTES) + digest.getDigestLength();
+    }
+
+    //Chunked receivers write into memory-mapped regions of the file instead of through a buffer
+    static boolean mapped() {
+        return Boolean.getBoolean("transfer.mmap");
+    }
+
+    //The relay's port can be changed with transfer.port, for instance to go through a proxy
+    static SocketChannel connect(char role, String id) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", Integer.getInteger("transfer.port", 1338)));
+        writeFully(channel, ByteBuffer.wrap((role + id).getBytes(StandardCharsets.UTF_8)));
+        return channel;
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    //Writes the buffers in one system call where the channel can, until the last one is written
+    static void writeFully(GatheringByteChannel channel, ByteBuffer... buffers) throws IOException {
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    //Returns false when the transfer has been tried often enough
+    static boolean retry(int attempt, IOException e) {
+        if (attempt >= MAX_ATTEMPTS) {
+            System.err.println("File transfer failed after " + attempt + " attempts: " + e.getMessage());
+            return false;
+        }
+        System.err.println("File transfer connection lost (" + (e instanceof EOFException ? "closed" : e.getMessage()) + "), reconnecting.");
+        try {
+            Thread.sleep(RETRY_DELAY_MS);
+        } catch (InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+}
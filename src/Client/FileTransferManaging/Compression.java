@@ -0,0 +1,30 @@
+package Client.FileTransferManaging;
+
+//How the chunks of a chunked transfer are encoded on the wire. With DEFLATE every chunk is compressed on its own, so
+//a chunk that is fetched again or sent on another stream can still be inflated without the chunks before it. The
+//digests are always those of the original bytes. NONE is what clients that don't name a compression use
+public enum Compression {
+    NONE,
+    DEFLATE;
+
+    //A chunk is only sent deflated when that leaves at most this part of its bytes
+    static final double MAX_RATIO = 0.9;
+
+    //A null name is NONE, throws IllegalArgumentException for compressions this client doesn't know
+    public static Compression forName(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        for (Compression compression : values()) {
+            if (compression.name().equalsIgnoreCase(name)) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression " + name);
+    }
+
+    //The compression new chunked transfers are offered with
+    public static Compression configured() {
+        return forName(System.getProperty("transfer.compression", "none"));
+    }
+}
@@ -1,4 +1,4 @@
 package Client.FileTransferManaging;
 
-public record FileReceiveData(String id, String checksum, String filename) {
+public record FileReceiveData(String id, String checksum, String filename, int chunkSize, int streams, ChecksumAlgorithm algorithm, Compression compression) {
 }
@@ -1,10 +1,18 @@
 package Client.FileTransferManaging;
 
-import java.io.*;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 
-import static Client.FileTransferManaging.ChecksumGenerator.generateChecksum;
+import static Client.FileTransferManaging.ChecksumGenerator.toHex;
 
 public class FileReceiverThread extends Thread {
     private final FileTransferManager fileTransferManager;
@@ -20,31 +28,98 @@ public class FileReceiverThread extends Thread {
         try {
             FileReceiveData data = fileTransferManager.getFileReceiveData(sender);
             fileTransferManager.removePendingFileReceiveRequest(sender);
-            FileOutputStream fileOutputStream = new FileOutputStream(data.filename());
-            Socket socket = new Socket("127.0.0.1", 1338);
-            InputStream inputStream = socket.getInputStream();
-            OutputStream outputStream = socket.getOutputStream();
+            FsyncPolicy fsyncPolicy = FsyncPolicy.configured();
+            TransferProgress progress = new TransferProgress("Receiving " + data.filename() + " from " + sender);
+            fileTransferManager.startTransfer(data.id(), progress);
+            try {
+                if (data.chunkSize() > 0) {
+                    //Every chunk was checked against its digest as it arrived, together they cover the whole file
+                    if (receiveChunked(data, fsyncPolicy, progress)) {
+                        System.out.println(progress.summary());
+                        System.out.println("File received, all chunks match their " + data.algorithm().getName() + " checksums.");
+                    } else {
+                        new File(data.filename()).delete();
+                    }
+                } else {
+                    receiveStream(data, fsyncPolicy, progress);
+                }
+            } finally {
+                fileTransferManager.finishTransfer(data.id());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void receiveStream(FileReceiveData data, FsyncPolicy fsyncPolicy, TransferProgress progress) throws IOException {
+        //The checksum is computed while the bytes are written, so the file doesn't have to be read again. The
+        //direct buffer is read into, digested and written without being copied into the heap. Without a checksum in
+        //the request, the digest is the last bytes of the stream, they are held back in the buffer until it ends
+        MessageDigest messageDigest = data.algorithm().newDigest();
+        int trailer = data.checksum() == null ? messageDigest.getDigestLength() : 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(ChunkedTransfer.BUFFER_SIZE);
+        //The length of a file sent as one stream isn't known, so it can't be preallocated or mapped
+        try (FileChannel file = FileChannel.open(Path.of(data.filename()), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             SocketChannel socket = ChunkedTransfer.connect('r', data.id())) {
+            System.out.println("Started receiving file.");
+            while (socket.read(buffer) != -1) {
+                int received = buffer.position() - trailer;
+                if (received <= 0) {
+                    continue;
+                }
+                buffer.flip().limit(received);
+                messageDigest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    file.write(buffer);
+                }
+                if (fsyncPolicy == FsyncPolicy.CHUNK) {
+                    file.force(false);
+                }
+                buffer.limit(received + trailer).compact();
+                progress.add(received);
+            }
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                file.force(true);
+            }
+        }
+        System.out.println(progress.summary());
 
-            outputStream.write(("r" + data.id()).getBytes(StandardCharsets.UTF_8));
-            outputStream.flush();
+        System.out.println("File received, checking checksum.");
+        byte[] expected = new byte[buffer.flip().remaining()];
+        buffer.get(expected);
+        String checksum = trailer > 0 ? toHex(expected) : data.checksum();
+        if (expected.length != trailer || !toHex(messageDigest.digest()).equals(checksum)) {
+            new File(data.filename()).delete();
+            System.err.println("File checksums do not match, deleting file.");
+        } else {
+            System.out.println("Checksums match, file successfully received.");
+        }
+    }
 
+    //Returns whether every chunk was received intact. Every stream is received by a receiver of its own, writing its
+    //range into the shared file
+    private boolean receiveChunked(FileReceiveData data, FsyncPolicy fsyncPolicy, TransferProgress progress) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(data.filename(), "rw")) {
             System.out.println("Started receiving file.");
-            inputStream.transferTo(fileOutputStream);
-
-            fileOutputStream.close();
-            socket.close();
-
-            System.out.println("File received, checking checksum.");
-            File file = new File(data.filename());
-            String checksum = generateChecksum(file);
-            if (!checksum.equals(data.checksum())) {
-                file.delete();
-                System.err.println("File checksums do not match, deleting file.");
-            } else {
-                System.out.println("Checksums match, file successfully received.");
+            List<ChunkReceiver> receivers = new ArrayList<>();
+            for (int stream = 0; stream < data.streams(); stream++) {
+                ChunkReceiver receiver = new ChunkReceiver(file, data.id(), data.streams(), stream, data.algorithm(), data.compression(), fsyncPolicy, progress);
+                receivers.add(receiver);
+                receiver.start();
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            boolean succeeded = true;
+            for (ChunkReceiver receiver : receivers) {
+                receiver.join();
+                succeeded &= receiver.succeeded();
+            }
+            //Also writes back the chunks the receivers wrote into mapped regions
+            if (succeeded && fsyncPolicy != FsyncPolicy.NONE) {
+                file.getChannel().force(true);
+            }
+            return succeeded;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 }
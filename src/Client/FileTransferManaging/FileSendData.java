@@ -2,5 +2,5 @@ package Client.FileTransferManaging;
 
 import java.io.File;
 
-public record FileSendData(String id, File file) {
+public record FileSendData(String id, File file, int chunkSize, int streams, ChecksumAlgorithm algorithm, Compression compression) {
 }
@@ -1,10 +1,13 @@
 package Client.FileTransferManaging;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FileSenderThread extends Thread {
     private final FileTransferManager fileTransferManager;
@@ -20,21 +23,60 @@ public class FileSenderThread extends Thread {
         try {
             FileSendData data = fileTransferManager.getFileSendData(receiver);
             fileTransferManager.removePendingFileSendRequest(receiver);
-            FileInputStream fileInputStream = new FileInputStream(data.file());
-            Socket socket = new Socket("127.0.0.1", 1338);
-            OutputStream outputStream = socket.getOutputStream();
-
-            outputStream.write(("w" + data.id()).getBytes(StandardCharsets.UTF_8));
-            outputStream.flush();
+            TransferProgress progress = new TransferProgress("Sending " + data.file().getName() + " to " + receiver);
+            progress.setTotal(data.file().length());
+            fileTransferManager.startTransfer(data.id(), progress);
+            try {
+                if (data.chunkSize() > 0) {
+                    sendChunked(data, progress);
+                } else {
+                    sendStream(data, progress);
+                }
+            } finally {
+                fileTransferManager.finishTransfer(data.id());
+            }
+            System.out.println(progress.summary());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 
+    private void sendStream(FileSendData data, TransferProgress progress) throws IOException {
+        try (FileChannel file = FileChannel.open(data.file().toPath(), StandardOpenOption.READ);
+             SocketChannel socket = ChunkedTransfer.connect('w', data.id())) {
             System.out.println("Started transferring file.");
-            fileInputStream.transferTo(outputStream);
+            //The bytes are digested in the direct buffer they are sent from, and the digest follows the last of them,
+            //so the file is read once
+            MessageDigest digest = data.algorithm().newDigest();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(ChunkedTransfer.BUFFER_SIZE);
+            int read;
+            while ((read = file.read(buffer)) != -1) {
+                digest.update(buffer.flip().duplicate());
+                ChunkedTransfer.writeFully(socket, buffer);
+                buffer.clear();
+                progress.add(read);
+            }
+            ChunkedTransfer.writeFully(socket, ByteBuffer.wrap(digest.digest()));
+        }
+        System.out.println("Finished transferring file.");
+    }
 
-            fileInputStream.close();
-            socket.close();
+    //Every stream is served by a sender of its own, the file is done when all of them are
+    private void sendChunked(FileSendData data, TransferProgress progress) throws IOException {
+        try (FileChannel file = FileChannel.open(data.file().toPath(), StandardOpenOption.READ)) {
+            System.out.println("Started transferring file.");
+            List<ChunkSender> senders = new ArrayList<>();
+            for (int stream = 0; stream < data.streams(); stream++) {
+                ChunkSender sender = new ChunkSender(file, ChunkedTransfer.streamId(data.id(), stream), data.chunkSize(), data.algorithm(), data.compression(), progress);
+                senders.add(sender);
+                sender.start();
+            }
+            for (ChunkSender sender : senders) {
+                sender.join();
+            }
             System.out.println("Finished transferring file.");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 }
@@ -1,15 +1,19 @@
 package Client.FileTransferManaging;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class FileTransferManager {
     private final Map<String, FileSendData> pendingFileSendRequests = new HashMap<>();
     private final Map<String, FileReceiveData> pendingFileReceiveRequests = new HashMap<>();
+    //Transfers that are moving bytes, by id. Written by the transfer threads and read by the CLI
+    private final Map<String, TransferProgress> activeTransfers = new ConcurrentHashMap<>();
 
-    public void addPendingFileSendRequest(String username, String id, File file) {
-        pendingFileSendRequests.put(username.toLowerCase(), new FileSendData(id, file));
+    public void addPendingFileSendRequest(String username, String id, File file, int chunkSize, int streams, ChecksumAlgorithm algorithm, Compression compression) {
+        pendingFileSendRequests.put(username.toLowerCase(), new FileSendData(id, file, chunkSize, streams, algorithm, compression));
     }
 
     public void removePendingFileSendRequest(String username) {
@@ -20,8 +24,8 @@ public class FileTransferManager {
         return pendingFileSendRequests.get(username.toLowerCase());
     }
 
-    public void addPendingFileReceiveRequest(String username, String id, String checksum, String filename) {
-        pendingFileReceiveRequests.put(username.toLowerCase(), new FileReceiveData(id, checksum, filename));
+    public void addPendingFileReceiveRequest(String username, String id, String checksum, String filename, int chunkSize, int streams, ChecksumAlgorithm algorithm, Compression compression) {
+        pendingFileReceiveRequests.put(username.toLowerCase(), new FileReceiveData(id, checksum, filename, chunkSize, streams, algorithm, compression));
     }
 
     public void removePendingFileReceiveRequest(String username) {
@@ -35,4 +39,16 @@ public class FileTransferManager {
     public boolean receiveRequestExists(String username) {
         return pendingFileReceiveRequests.containsKey(username.toLowerCase());
     }
+
+    public void startTransfer(String id, TransferProgress progress) {
+        activeTransfers.put(id, progress);
+    }
+
+    public void finishTransfer(String id) {
+        activeTransfers.remove(id);
+    }
+
+    public Collection<TransferProgress> getActiveTransfers() {
+        return activeTransfers.values();
+    }
 }
@@ -0,0 +1,14 @@
+package Client.FileTransferManaging;
+
+//When a received file is forced to disk. NONE leaves it to the operating system, like before, END forces it once the
+//whole file is there and CHUNK forces every chunk before the next one is received, so a chunk that was received
+//survives a crash of the machine. A file sent as one stream has no chunks, CHUNK forces it after every buffer
+public enum FsyncPolicy {
+    NONE,
+    END,
+    CHUNK;
+
+    public static FsyncPolicy configured() {
+        return valueOf(System.getProperty("transfer.fsync", "none").toUpperCase());
+    }
+}
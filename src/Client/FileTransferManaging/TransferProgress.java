@@ -0,0 +1,86 @@
+package Client.FileTransferManaging;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//Live counters of one file transfer. The threads moving its bytes add to them, every stream of a chunked transfer to
+//the same counters, and the CLI polls them. The current throughput is measured over the time since the previous poll
+//that was at least a second ago, until then it is the average over the whole transfer so far
+public class TransferProgress {
+    private static final long SAMPLE_NANOS = 1000000000L;
+    private final String description;
+    private final LongAdder bytes = new LongAdder();
+    //The bytes that went over the wire for them, fewer when chunks were compressed
+    private final LongAdder wireBytes = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    //-1 while the size of the file isn't known
+    private volatile long total = -1;
+    private long sampleNanos = startNanos;
+    private long sampleBytes = 0;
+    private double currentRate = 0;
+
+    public TransferProgress(String description) {
+        this.description = description;
+    }
+
+    void setTotal(long total) {
+        this.total = total;
+    }
+
+    void add(long count) {
+        add(count, count);
+    }
+
+    void add(long count, long sent) {
+        bytes.add(count);
+        wireBytes.add(sent);
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public synchronized String describe() {
+        long now = System.nanoTime();
+        long moved = bytes.sum();
+        if (now - sampleNanos >= SAMPLE_NANOS) {
+            currentRate = (moved - sampleBytes) / ((now - sampleNanos) / 1e9);
+            sampleNanos = now;
+            sampleBytes = moved;
+        }
+        double averageRate = moved / Math.max((now - startNanos) / 1e9, 1e-9);
+        if (sampleNanos == startNanos) {
+            currentRate = averageRate;
+        }
+        StringBuilder builder = new StringBuilder(description).append(": ").append(megabytes(moved));
+        if (total >= 0) {
+            builder.append(" of ").append(megabytes(total)).append(" (").append(total == 0 ? 100 : moved * 100 / total).append("%)");
+        }
+        builder.append(", ").append(megabytes(currentRate)).append("/s now, ").append(megabytes(averageRate)).append("/s average");
+        if (total >= 0) {
+            double rate = currentRate > 0 ? currentRate : averageRate;
+            builder.append(", ETA ").append(rate > 0 ? Math.round((total - moved) / rate) + " s" : "unknown");
+        }
+        return builder.toString();
+    }
+
+    //The line printed when the transfer is done
+    public String summary() {
+        long moved = bytes.sum();
+        long sent = wireBytes.sum();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        String summary = description + ": " + megabytes(moved) + " in " + String.format("%.1f", seconds) + " s, "
+                + megabytes(moved / Math.max(seconds, 1e-9)) + "/s";
+        if (sent != moved) {
+            summary += ", compressed to " + megabytes(sent) + " (" + (moved == 0 ? 100 : sent * 100 / moved) + "%)";
+        }
+        return summary;
+    }
+
+    private static String megabytes(double bytes) {
+        return String.format("%.1f MB", bytes / (1024 * 1024));
+    }
+}
@@ -1,24 +1,128 @@
 package Client;
 
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.security.*;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+//The client's RSA key pair. Generating one takes hundreds of milliseconds of CPU and it is only needed for encrypted
+//messages, so it isn't in the way of connecting and logging in: it is generated on a background thread once start is
+//called after the login, or when a getter needs it before that. The getters wait for it if it isn't there yet
+//
+//With client.keystore set to a file, the key pair is read from that file, or generated and written to it, readable
+//only by its owner, when there is none. A file that can't be read is replaced with a new key pair
 public class KeyPairGeneration {
-    private final byte[] publicKey;
-    private final byte[] privateKey;
+    private static final int MAX_KEY_LENGTH = 64 * 1024;
+    private final CompletableFuture<KeyPair> keyPair = new CompletableFuture<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile byte[] publicKey;
 
-    public KeyPairGeneration() throws NoSuchAlgorithmException {
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
-        keyPairGenerator.initialize(2048);
-        KeyPair keyPair = keyPairGenerator.generateKeyPair();
-        this.publicKey = keyPair.getPublic().getEncoded();
-        this.privateKey = keyPair.getPrivate().getEncoded();
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        String keyStore = System.getProperty("client.keystore");
+        Thread.ofPlatform().daemon().name("key-pair-generation").start(() -> {
+            try {
+                keyPair.complete(keyStore == null ? generate() : loadOrGenerate(Path.of(keyStore)));
+            } catch (Throwable e) {
+                keyPair.completeExceptionally(e);
+            }
+        });
     }
 
     public byte[] getPublicKey() {
+        if (publicKey == null) {
+            publicKey = keyPair().getPublic().getEncoded();
+        }
         return publicKey;
     }
 
-    public byte[] getPrivateKey() {
-        return privateKey;
+    public PrivateKey getPrivateKey() {
+        return keyPair().getPrivate();
+    }
+
+    private KeyPair keyPair() {
+        start();
+        try {
+            return keyPair.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static KeyPair generate() throws NoSuchAlgorithmException {
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        return keyPairGenerator.generateKeyPair();
+    }
+
+    private static KeyPair loadOrGenerate(Path file) throws NoSuchAlgorithmException {
+        if (Files.exists(file)) {
+            try {
+                return load(file);
+            } catch (IOException | InvalidKeySpecException e) {
+                System.err.println("Couldn't read the key store " + file + ": " + e.getMessage());
+            }
+        }
+        KeyPair keyPair = generate();
+        try {
+            store(file, keyPair);
+        } catch (IOException e) {
+            System.err.println("Couldn't write the key store " + file + ": " + e.getMessage());
+        }
+        return keyPair;
+    }
+
+    //The file holds the X.509 encoded public key and the PKCS8 encoded private key, each after its length
+    private static KeyPair load(Path file) throws IOException, InvalidKeySpecException, NoSuchAlgorithmException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            byte[] publicKey = readKey(input);
+            byte[] privateKey = readKey(input);
+            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+            return new KeyPair(keyFactory.generatePublic(new X509EncodedKeySpec(publicKey)),
+                    keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey)));
+        }
+    }
+
+    private static byte[] readKey(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length <= 0 || length > MAX_KEY_LENGTH) {
+            throw new IOException("Invalid key length " + length);
+        }
+        byte[] key = new byte[length];
+        input.readFully(key);
+        return key;
+    }
+
+    //Writes a temporary file next to the key store and moves it in place, so a client that stops halfway doesn't
+    //leave half a key pair behind
+    private static void store(Path file, KeyPair keyPair) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary;
+        try {
+            temporary = Files.createTempFile(directory, "keystore", ".tmp", PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException e) {
+            temporary = Files.createTempFile(directory, "keystore", ".tmp");
+        }
+        try {
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                byte[] publicKey = keyPair.getPublic().getEncoded();
+                byte[] privateKey = keyPair.getPrivate().getEncoded();
+                output.writeInt(publicKey.length);
+                output.write(publicKey);
+                output.writeInt(privateKey.length);
+                output.write(privateKey);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
     }
-}
\ No newline at end of file
+}
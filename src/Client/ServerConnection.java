@@ -0,0 +1,116 @@
+package Client;
+
+import Messages.BinaryCodec;
+import Messages.MessageCodec;
+import Messages.Opcode;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//The client's side of the chat connection. Everything is text lines until the client asks for the binary protocol,
+//after that both sides send length prefixed frames, see BinaryCodec
+public class ServerConnection {
+    private final DataInputStream input;
+    private final OutputStream output;
+    private final MessageCodec codec;
+    private byte[] lineBuffer = new byte[256];
+    private boolean binaryOutput = false;
+    private boolean binaryInput = false;
+
+    public ServerConnection(InputStream inputStream, OutputStream outputStream, MessageCodec codec) {
+        this.input = new DataInputStream(new BufferedInputStream(inputStream));
+        this.output = new BufferedOutputStream(outputStream);
+        this.codec = codec;
+    }
+
+    //The server reads frames right after the BINARY line and answers with a BINARY_RESP line, every message it
+    //sends after that is a frame
+    public void switchToBinary() throws IOException {
+        send("BINARY");
+        synchronized (this) {
+            binaryOutput = true;
+        }
+        while (true) {
+            ServerMessage message = receive();
+            if (message == null) {
+                throw new EOFException("Connection closed while switching to the binary protocol");
+            }
+            if (message.command().equals("BINARY_RESP")) {
+                binaryInput = true;
+                return;
+            }
+        }
+    }
+
+    public synchronized void send(String command) {
+        write(binaryOutput ? BinaryCodec.encodeFrame(command, null) : (command + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void send(String command, Object message) throws JsonProcessingException {
+        write(binaryOutput ? BinaryCodec.encodeFrame(command, message) : codec.encodeLine(command, message));
+    }
+
+    //Returns null when the server closed the connection. Only called by one thread at a time
+    public ServerMessage receive() throws IOException {
+        try {
+            return binaryInput ? receiveFrame() : receiveLine();
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    public <T> T read(ServerMessage message, Class<T> type) throws JsonProcessingException {
+        byte[] payload = message.payload();
+        if (message.binary()) {
+            return BinaryCodec.read(payload, 0, payload.length, type);
+        }
+        return codec.read(payload, 0, payload.length, type);
+    }
+
+    private ServerMessage receiveLine() throws IOException {
+        int length = 0;
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b == -1) {
+                throw new EOFException();
+            }
+            if (length == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, length * 2);
+            }
+            lineBuffer[length++] = (byte) b;
+        }
+        if (length > 0 && lineBuffer[length - 1] == '\r') {
+            length--;
+        }
+        int space = 0;
+        while (space < length && lineBuffer[space] != ' ') {
+            space++;
+        }
+        String command = new String(lineBuffer, 0, space, StandardCharsets.UTF_8);
+        byte[] payload = space < length ? Arrays.copyOfRange(lineBuffer, space + 1, length) : new byte[0];
+        return new ServerMessage(command, payload, false);
+    }
+
+    private ServerMessage receiveFrame() throws IOException {
+        int length = input.readInt();
+        if (length < 1 || length > BinaryCodec.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        Opcode opcode = Opcode.forCode(input.readUnsignedByte());
+        byte[] payload = new byte[length - 1];
+        input.readFully(payload);
+        return new ServerMessage(opcode == null ? "" : opcode.name(), payload, true);
+    }
+
+    //Like the PrintWriter used before, a failed write is only reported, the reader notices the closed connection
+    private void write(byte[] bytes) {
+        try {
+            output.write(bytes);
+            output.flush();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+}
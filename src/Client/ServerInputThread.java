@@ -1,31 +1,27 @@
 package Client;
 
+import Client.FileTransferManaging.ChecksumAlgorithm;
+import Client.FileTransferManaging.Compression;
 import Client.FileTransferManaging.FileSenderThread;
 import Client.FileTransferManaging.FileTransferManager;
 import Messages.*;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import javax.crypto.*;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.BufferedReader;
-import java.io.PrintWriter;
-import java.security.*;
-import java.security.spec.*;
-
-import static Messages.MessageSender.sendLine;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.SecretKey;
+import java.security.GeneralSecurityException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ServerInputThread extends Thread {
-    private final BufferedReader reader;
-    private final PrintWriter writer;
-    private final ObjectMapper mapper;
+    private final ServerConnection connection;
     private final FileTransferManager fileTransferManager;
     private final Client client;
+    private final ExecutorService cryptoExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("client-crypto").factory());
 
-    ServerInputThread(BufferedReader reader, PrintWriter writer, ObjectMapper mapper, FileTransferManager fileTransferManager, Client client) {
-        this.reader = reader;
-        this.writer = writer;
-        this.mapper = mapper;
+    ServerInputThread(ServerConnection connection, FileTransferManager fileTransferManager, Client client) {
+        this.connection = connection;
         this.fileTransferManager = fileTransferManager;
         this.client = client;
     }
@@ -34,39 +30,40 @@ public class ServerInputThread extends Thread {
     public void run() {
         while (true) {
             try {
-                String line = reader.readLine();
-                if (line == null) { //When server is unexpectedly shut down line will be null
-                    handleDSCN("{\"code\":0}");
+                ServerMessage message = connection.receive();
+                if (message == null) { //When server is unexpectedly shut down message will be null
+                    MessageCodePrinter.printMessageFromCode(0);
+                    System.exit(0);
                 } else {
-                    String[] lineParts = line.split(" ", 2);
-                    switch (lineParts[0]) {
-                        case "JOINED" -> handleJoinedMessage(lineParts[1]);
-                        case "BROADCAST_RESP" -> handleBroadcastResponse(lineParts[1]);
-                        case "BROADCAST" -> handleBroadcast(lineParts[1]);
-                        case "PING" -> sendLine("PONG", writer);
-                        case "DSCN" -> handleDSCN(lineParts[1]);
-                        case "PONG_ERROR" -> handlePongError(lineParts[1]);
-                        case "BYE_RESP" -> handleByeResponse(lineParts[1]);
-                        case "LEFT" -> handleLeftMessage(lineParts[1]);
-                        case "LIST_USERS_RESP" -> handleListUsersResponse(lineParts[1]);
-                        case "PRIVATE_MESSAGE_RESP" -> handlePrivateMessageResponse(lineParts[1]);
-                        case "PRIVATE_MESSAGE" -> handlePrivateMessage(lineParts[1]);
-                        case "NUMBER_SETUP_RESP" -> handleNumberSetupResponse(lineParts[1]);
-                        case "NUMBER_SETUP" -> handleNumberSetupMessage(lineParts[1]);
-                        case "NUMBER_JOIN_RESP" -> handleNumberJoinResponse(lineParts[1]);
+                    switch (message.command()) {
+                        case "JOINED" -> handleJoinedMessage(message);
+                        case "BROADCAST_RESP" -> handleBroadcastResponse(message);
+                        case "BROADCAST" -> handleBroadcast(message);
+                        case "PING" -> connection.send("PONG");
+                        case "DSCN" -> handleDSCN(message);
+                        case "PONG_ERROR" -> handlePongError(message);
+                        case "BYE_RESP" -> handleByeResponse(message);
+                        case "LEFT" -> handleLeftMessage(message);
+                        case "LIST_USERS_RESP" -> handleListUsersResponse(message);
+                        case "PRIVATE_MESSAGE_RESP" -> handlePrivateMessageResponse(message);
+                        case "PRIVATE_MESSAGE" -> handlePrivateMessage(message);
+                        case "NUMBER_SETUP_RESP" -> handleNumberSetupResponse(message);
+                        case "NUMBER_SETUP" -> handleNumberSetupMessage(message);
+                        case "NUMBER_JOIN_RESP" -> handleNumberJoinResponse(message);
                         case "NUMBER_START" ->
-                                System.out.println("The number guessing game has started! Use the 'number_guess <number>' command to guess a number");
+                                System.out.println("The number guessing game" + gameName(message) + " has started! Use the 'number_guess <number>' command to guess a number");
                         case "NUMBER_CANCEL" ->
-                                System.out.println("The number guessing game has been cancelled due to lack of participants");
-                        case "NUMBER_GUESS_RESP" -> handleGuessResponse(lineParts[1]);
-                        case "NUMBER_RESULT" -> handleResult(lineParts[1]);
-                        case "FILE_TRANSFER_REQ" -> handleFileTransferRequest(lineParts[1]);
-                        case "FILE_TRANSFER_RESP" -> handleFileTransferResponse(lineParts[1]);
-                        case "PUBLIC_KEY" -> handlePublicKey(lineParts[1]);
-                        case "SESSION_KEY" -> handleSessionKey(lineParts[1]);
-                        case "ENCRYPTED_MESSAGE" -> handleEncryptedPrivateMessage(lineParts[1]);
-                        case "KEY_RESP" -> handleKeyResponse(lineParts[1]);
-                        case "ENCRYPTED_MESSAGE_RESP" -> handleEncryptedPrivateMessageResponse(lineParts[1]);
+                                System.out.println("The number guessing game" + gameName(message) + " has been cancelled due to lack of participants");
+                        case "NUMBER_GUESS_RESP" -> handleGuessResponse(message);
+                        case "NUMBER_RESULT" -> handleResult(message);
+                        case "LEADERBOARD_RESP" -> handleLeaderboardResponse(message);
+                        case "FILE_TRANSFER_REQ" -> handleFileTransferRequest(message);
+                        case "FILE_TRANSFER_RESP" -> handleFileTransferResponse(message);
+                        case "PUBLIC_KEY" -> handlePublicKey(message);
+                        case "SESSION_KEY" -> handleSessionKey(message);
+                        case "ENCRYPTED_MESSAGE" -> handleEncryptedPrivateMessage(message);
+                        case "KEY_RESP" -> handleKeyResponse(message);
+                        case "ENCRYPTED_MESSAGE_RESP" -> handleEncryptedPrivateMessageResponse(message);
                         case "UNKNOWN_COMMAND" -> {
                             System.out.println("This is an invalid message");
                             MessageCodePrinter.printHelpMessage();
@@ -81,14 +78,14 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handleJoinedMessage(String message) throws Exception {
-        GenericMessage joinedMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleJoinedMessage(ServerMessage message) throws Exception {
+        GenericMessage joinedMessage = connection.read(message, GenericMessage.class);
 
         System.out.println(joinedMessage.username() + " has joined");
     }
 
-    private void handleBroadcastResponse(String message) throws Exception {
-        GenericMessage broadcastResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleBroadcastResponse(ServerMessage message) throws Exception {
+        GenericMessage broadcastResponseMessage = connection.read(message, GenericMessage.class);
 
         if (broadcastResponseMessage.status().equals("OK")) {
             System.out.println("Message has been sent successfully");
@@ -97,28 +94,28 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handleBroadcast(String message) throws Exception {
-        GenericMessage broadcastMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleBroadcast(ServerMessage message) throws Exception {
+        GenericMessage broadcastMessage = connection.read(message, GenericMessage.class);
 
         System.out.println(broadcastMessage.username() + ": " + broadcastMessage.message());
     }
 
-    private void handleDSCN(String message) throws Exception {
-        GenericMessage disconnectMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleDSCN(ServerMessage message) throws Exception {
+        GenericMessage disconnectMessage = connection.read(message, GenericMessage.class);
 
         MessageCodePrinter.printMessageFromCode(disconnectMessage.code());
 
         System.exit(0);
     }
 
-    private void handlePongError(String message) throws Exception {
-        GenericMessage pongErrorMessage = mapper.readValue(message, GenericMessage.class);
+    private void handlePongError(ServerMessage message) throws Exception {
+        GenericMessage pongErrorMessage = connection.read(message, GenericMessage.class);
 
         MessageCodePrinter.printMessageFromCode(pongErrorMessage.code());
     }
 
-    private void handleByeResponse(String message) throws Exception {
-        GenericMessage byeResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleByeResponse(ServerMessage message) throws Exception {
+        GenericMessage byeResponseMessage = connection.read(message, GenericMessage.class);
 
         if (byeResponseMessage.status().equals("OK")) {
             System.out.println("Bye bye");
@@ -129,36 +126,48 @@ public class ServerInputThread extends Thread {
         System.exit(0);
     }
 
-    private void handleLeftMessage(String message) throws Exception {
-        GenericMessage leftMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleLeftMessage(ServerMessage message) throws Exception {
+        GenericMessage leftMessage = connection.read(message, GenericMessage.class);
 
         System.out.println(leftMessage.username() + " has left");
         fileTransferManager.removePendingFileSendRequest(leftMessage.username());
         fileTransferManager.removePendingFileReceiveRequest(leftMessage.username());
-        client.removeSessionKey(leftMessage.username());
-        client.removeStoredEncryptedMessage(leftMessage.username());
+        int unsent = client.getSessionKeys().forget(leftMessage.username());
+        client.getCrypto().forget(leftMessage.username());
+        if (unsent > 0) {
+            System.err.println(unsent + " encrypted messages to " + leftMessage.username() + " couldn't be sent.");
+        }
+    }
+
+    //" <id>" for a game with an id, empty for the game without one, whose messages have no body
+    private String gameName(ServerMessage message) throws JsonProcessingException {
+        if (message.payload().length == 0) {
+            return "";
+        }
+        String id = connection.read(message, NumberGameMessage.class).id();
+        return id == null ? "" : " " + id;
     }
 
-    private void handleNumberSetupResponse(String message) throws JsonProcessingException {
-        GenericMessage setupResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleNumberSetupResponse(ServerMessage message) throws JsonProcessingException {
+        NumberGameResponseMessage setupResponseMessage = connection.read(message, NumberGameResponseMessage.class);
 
         if (setupResponseMessage.status().equals("OK")) {
-            System.out.println("Number guessing game set up successfully");
+            System.out.println("Number guessing game" + (setupResponseMessage.id() == null ? "" : " " + setupResponseMessage.id()) + " set up successfully");
         } else {
             MessageCodePrinter.printMessageFromCode(setupResponseMessage.code());
         }
     }
 
-    private void handleListUsersResponse(String message) throws JsonProcessingException {
-        UserListMessage handleListUsersResponseMessage = mapper.readValue(message, UserListMessage.class);
+    private void handleListUsersResponse(ServerMessage message) throws JsonProcessingException {
+        UserListMessage handleListUsersResponseMessage = connection.read(message, UserListMessage.class);
 
         for (String user : handleListUsersResponseMessage.userList()) {
             System.out.println(user);
         }
     }
 
-    private void handlePrivateMessageResponse(String message) throws JsonProcessingException {
-        GenericMessage handlePrivateMessageResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handlePrivateMessageResponse(ServerMessage message) throws JsonProcessingException {
+        GenericMessage handlePrivateMessageResponseMessage = connection.read(message, GenericMessage.class);
 
         if (handlePrivateMessageResponseMessage.status().equals("OK")) {
             System.out.println("Message has been sent successfully");
@@ -167,20 +176,22 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handlePrivateMessage(String message) throws JsonProcessingException {
-        GenericMessage handlePrivateMessageMessage = mapper.readValue(message, GenericMessage.class);
+    private void handlePrivateMessage(ServerMessage message) throws JsonProcessingException {
+        GenericMessage handlePrivateMessageMessage = connection.read(message, GenericMessage.class);
 
         System.out.println("Whisper from " + handlePrivateMessageMessage.username() + ": " + handlePrivateMessageMessage.message());
+        client.getSessionKeys().contact(handlePrivateMessageMessage.username());
     }
 
-    private void handleNumberSetupMessage(String message) throws JsonProcessingException {
-        GenericMessage setupMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleNumberSetupMessage(ServerMessage message) throws JsonProcessingException {
+        NumberSetupMessage setupMessage = connection.read(message, NumberSetupMessage.class);
 
-        System.out.println(setupMessage.username() + " has started a number guessing game! You have 10 seconds to use the 'number_join' command to join");
+        String join = setupMessage.id() == null ? "number_join" : "number_join " + setupMessage.id();
+        System.out.println(setupMessage.username() + " has started a number guessing game! You have 10 seconds to use the '" + join + "' command to join");
     }
 
-    private void handleNumberJoinResponse(String message) throws JsonProcessingException {
-        GenericMessage joinResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleNumberJoinResponse(ServerMessage message) throws JsonProcessingException {
+        NumberGameResponseMessage joinResponseMessage = connection.read(message, NumberGameResponseMessage.class);
 
         if (joinResponseMessage.status().equals("OK")) {
             System.out.println("Number guessing game joined successfully");
@@ -189,8 +200,8 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handleGuessResponse(String message) throws JsonProcessingException {
-        GenericMessage guessResponseMessage = mapper.readValue(message, GenericMessage.class);
+    private void handleGuessResponse(ServerMessage message) throws JsonProcessingException {
+        NumberGuessResponseMessage guessResponseMessage = connection.read(message, NumberGuessResponseMessage.class);
 
         if (!guessResponseMessage.status().equals("ERROR")) {
             switch (guessResponseMessage.code()) {
@@ -204,25 +215,66 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handleResult(String message) throws JsonProcessingException {
-        NumberResult resultMessage = mapper.readValue(message, NumberResult.class);
+    private void handleResult(ServerMessage message) throws JsonProcessingException {
+        NumberResult resultMessage = connection.read(message, NumberResult.class);
 
+        if (resultMessage.id() != null) {
+            System.out.println("Results of the number guessing game " + resultMessage.id() + ":");
+        }
         for (int i = 0; i < resultMessage.results().size(); i++) {
             System.out.println((i + 1) + " " + resultMessage.results().get(i));
         }
     }
 
-    private void handleFileTransferRequest(String message) throws JsonProcessingException {
-        FileTransferRequestMessage requestMessage = mapper.readValue(message, FileTransferRequestMessage.class);
+    private void handleLeaderboardResponse(ServerMessage message) throws JsonProcessingException {
+        LeaderboardMessage leaderboardMessage = connection.read(message, LeaderboardMessage.class);
+
+        if (leaderboardMessage.status().equals("ERROR")) {
+            MessageCodePrinter.printMessageFromCode(leaderboardMessage.code());
+        } else if (leaderboardMessage.player() != null) {
+            System.out.println(leaderboardMessage.player());
+        } else {
+            System.out.println("Fastest players:");
+            printLeaderboard(leaderboardMessage.fastest());
+            System.out.println("Most wins:");
+            printLeaderboard(leaderboardMessage.mostWins());
+        }
+    }
+
+    private void printLeaderboard(List<LeaderboardEntry> entries) {
+        if (entries == null) {
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            System.out.println((i + 1) + " " + entries.get(i));
+        }
+    }
+
+    private void handleFileTransferRequest(ServerMessage message) throws JsonProcessingException {
+        FileTransferRequestMessage requestMessage = connection.read(message, FileTransferRequestMessage.class);
         System.out.println("RECEIVED " + requestMessage);
 
-        fileTransferManager.addPendingFileReceiveRequest(requestMessage.username(), requestMessage.id(), requestMessage.checksum(), requestMessage.filename());
+        ChecksumAlgorithm algorithm;
+        Compression compression;
+        try {
+            algorithm = ChecksumAlgorithm.forName(requestMessage.algorithm());
+        } catch (IllegalArgumentException e) {
+            System.err.println(requestMessage.username() + " wants to send you a file, but it can't be verified: " + e.getMessage());
+            return;
+        }
+        try {
+            compression = Compression.forName(requestMessage.compression());
+        } catch (IllegalArgumentException e) {
+            System.err.println(requestMessage.username() + " wants to send you a file, but it can't be decompressed: " + e.getMessage());
+            return;
+        }
+        fileTransferManager.addPendingFileReceiveRequest(requestMessage.username(), requestMessage.id(), requestMessage.checksum(), requestMessage.filename(), requestMessage.chunkSize(), Math.max(1, requestMessage.streams()), algorithm, compression);
         System.out.println(requestMessage.username() + " would like to send you a " + requestMessage.filesize() + " kb file named " + requestMessage.filename());
         System.out.println("Use file_accept " + requestMessage.username() + " or file_decline " + requestMessage.username() + " to accept or decline.");
     }
 
-    private void handleFileTransferResponse(String message) throws JsonProcessingException {
-        FileTransferResponseMessage responseMessage = mapper.readValue(message, FileTransferResponseMessage.class);
+    private void handleFileTransferResponse(ServerMessage message) throws JsonProcessingException {
+        FileTransferResponseMessage responseMessage = connection.read(message, FileTransferResponseMessage.class);
 
         if (!responseMessage.status().equals("ERROR")) {
             switch (responseMessage.code()) {
@@ -242,82 +294,83 @@ public class ServerInputThread extends Thread {
         }
     }
 
-    private void handlePublicKey(String message) throws JsonProcessingException, InvalidKeySpecException {
-        KeyMessage publicKeyMessage = mapper.readValue(message, KeyMessage.class);
-
-        try {
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            EncodedKeySpec publicKeySpec = new X509EncodedKeySpec(publicKeyMessage.key());
-            PublicKey publicKey = keyFactory.generatePublic(publicKeySpec);
-
-            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
-            keyGenerator.init(128);
-            SecretKey sessionKey = keyGenerator.generateKey();
-            byte[] encodedKey = sessionKey.getEncoded();
-
-            Cipher cipher = Cipher.getInstance("RSA");
-            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
-            byte[] encryptedEncodedSessionKey = cipher.doFinal(encodedKey);
-
-            KeyMessage sessionKeyMessage = new KeyMessage(publicKeyMessage.username(), encryptedEncodedSessionKey);
-            sendLine("SESSION_KEY " + mapper.writeValueAsString(sessionKeyMessage), writer);
-            client.addSessionKey(publicKeyMessage.username(), sessionKey);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException |
-                 BadPaddingException e) {
-            throw new RuntimeException(e);
-        }
+    private void handlePublicKey(ServerMessage message) throws JsonProcessingException {
+        KeyMessage publicKeyMessage = connection.read(message, KeyMessage.class);
+        onCryptoThread(() -> {
+            if (!client.getSessionKeys().shouldAnswer(publicKeyMessage.username())) {
+                return;
+            }
+            CryptoEngine crypto = client.getCrypto();
+            SecretKey sessionKey = crypto.newSessionKey();
+            byte[] encryptedSessionKey = crypto.wrap(publicKeyMessage.username(), publicKeyMessage.key(), sessionKey);
+
+            KeyMessage sessionKeyMessage = new KeyMessage(publicKeyMessage.username(), encryptedSessionKey);
+            connection.send("SESSION_KEY", sessionKeyMessage);
+            sendEncrypted(publicKeyMessage.username(), sessionKey, client.getSessionKeys().established(publicKeyMessage.username(), sessionKey));
+        });
     }
 
-    private void handleSessionKey(String message) throws JsonProcessingException, InvalidKeySpecException {
-        KeyMessage sessionKeyMessage = mapper.readValue(message, KeyMessage.class);
-
-        try {
-            KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-            EncodedKeySpec privateKeySpec = new PKCS8EncodedKeySpec(client.getPrivateKey());
-            PrivateKey privateKey = keyFactory.generatePrivate(privateKeySpec);
-
-            Cipher decryptCipher = Cipher.getInstance("RSA");
-            decryptCipher.init(Cipher.DECRYPT_MODE, privateKey);
-            byte[] decryptedSessionKey = decryptCipher.doFinal(sessionKeyMessage.key());
-
-            SecretKey sessionKey = new SecretKeySpec(decryptedSessionKey, "AES");
-            client.addSessionKey(sessionKeyMessage.username(), sessionKey);
-
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, client.getSessionKey(sessionKeyMessage.username()));
-            byte[] encryptedMessage = cipher.doFinal(client.getStoredEncryptedMessage(sessionKeyMessage.username()).getBytes());
-            sendLine("ENCRYPTED_MESSAGE_REQ " + mapper.writeValueAsString(new EncryptedPrivateMessage(sessionKeyMessage.username(), encryptedMessage)), writer);
-            client.removeStoredEncryptedMessage(sessionKeyMessage.username());
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException |
-                 BadPaddingException e) {
-            throw new RuntimeException(e);
-        }
+    private void handleSessionKey(ServerMessage message) throws JsonProcessingException {
+        KeyMessage sessionKeyMessage = connection.read(message, KeyMessage.class);
+        onCryptoThread(() -> {
+            SecretKey sessionKey = client.getCrypto().unwrap(sessionKeyMessage.key());
+            sendEncrypted(sessionKeyMessage.username(), sessionKey, client.getSessionKeys().established(sessionKeyMessage.username(), sessionKey));
+        });
     }
 
-    private void handleEncryptedPrivateMessage(String message) throws JsonProcessingException {
-        EncryptedPrivateMessage handlePrivateMessageMessage = mapper.readValue(message, EncryptedPrivateMessage.class);
-
-        try {
-            Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, client.getSessionKey(handlePrivateMessageMessage.username()));
+    private void handleEncryptedPrivateMessage(ServerMessage message) throws JsonProcessingException {
+        EncryptedPrivateMessage handlePrivateMessageMessage = connection.read(message, EncryptedPrivateMessage.class);
+        String sender = handlePrivateMessageMessage.username();
+        onCryptoThread(() -> {
+            //The peer may have encrypted the message before it got the key that replaced the previous one
+            for (SecretKey sessionKey : client.getSessionKeys().decryptionKeys(sender)) {
+                try {
+                    String decryptedMessage = client.getCrypto().decrypt(sessionKey, handlePrivateMessageMessage.message(), sender, client.getUsername());
+                    System.out.println("Encrypted whisper from " + sender + ": " + decryptedMessage);
+                    return;
+                } catch (AEADBadTagException e) {
+                    //Not encrypted with this key
+                }
+            }
+            System.err.println("Couldn't decrypt an encrypted whisper from " + sender);
+        });
+    }
 
-            byte[] decryptedBytes = cipher.doFinal(handlePrivateMessageMessage.message());
-            String decryptedMessage = new String(decryptedBytes);
+    //Runs the RSA and AES work of the encrypted messages on the crypto thread, so the messages after them aren't held
+    //up. One thread keeps them in order: the messages a peer encrypts with a new key come right after the key
+    private void onCryptoThread(CryptoTask task) {
+        cryptoExecutor.execute(() -> {
+            try {
+                task.run();
+            } catch (GeneralSecurityException | JsonProcessingException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+    }
 
-            System.out.println("Encrypted whisper from " + handlePrivateMessageMessage.username() + ": " + decryptedMessage);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException | IllegalBlockSizeException |
-                 BadPaddingException e) {
-            throw new RuntimeException(e);
+    //Sends the messages that waited for the session key
+    private void sendEncrypted(String username, SecretKey sessionKey, List<String> messages) throws JsonProcessingException,
+            GeneralSecurityException {
+        for (String pending : messages) {
+            byte[] encryptedMessage = client.getCrypto().encrypt(sessionKey, pending, client.getUsername(), username);
+            connection.send("ENCRYPTED_MESSAGE_REQ", new EncryptedPrivateMessage(username, encryptedMessage));
         }
     }
 
-    private void handleKeyResponse(String message) throws JsonProcessingException {
-        ErrorResponseMessage keyResponse = mapper.readValue(message, ErrorResponseMessage.class);
+    private void handleKeyResponse(ServerMessage message) throws JsonProcessingException {
+        KeyResponseMessage keyResponse = connection.read(message, KeyResponseMessage.class);
         MessageCodePrinter.printMessageFromCode(keyResponse.code());
+        //The user isn't there, stop asking for a key until they're contacted again
+        if (keyResponse.code() == 5000 && keyResponse.username() != null) {
+            int unsent = client.getSessionKeys().forget(keyResponse.username());
+            if (unsent > 0) {
+                System.err.println(unsent + " encrypted messages to " + keyResponse.username() + " couldn't be sent.");
+            }
+        }
     }
 
-    private void handleEncryptedPrivateMessageResponse(String message) throws JsonProcessingException {
-        ErrorResponseMessage encryptedPrivateMessageResponse = mapper.readValue(message, ErrorResponseMessage.class);
+    private void handleEncryptedPrivateMessageResponse(ServerMessage message) throws JsonProcessingException {
+        ErrorResponseMessage encryptedPrivateMessageResponse = connection.read(message, ErrorResponseMessage.class);
 
         if (encryptedPrivateMessageResponse.status().equals("OK")) {
             System.out.println("Encrypted private message sent successfully");
@@ -325,4 +378,8 @@ public class ServerInputThread extends Thread {
             MessageCodePrinter.printMessageFromCode(encryptedPrivateMessageResponse.code());
         }
     }
+
+    private interface CryptoTask {
+        void run() throws GeneralSecurityException, JsonProcessingException;
+    }
 }
@@ -0,0 +1,5 @@
+package Client;
+
+//A command received from the server, the payload is JSON or, with the binary protocol, a binary body
+public record ServerMessage(String command, byte[] payload, boolean binary) {
+}
@@ -0,0 +1,188 @@
+package Client;
+
+import Messages.KeyMessage;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import javax.crypto.SecretKey;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+//The session keys of the encrypted private messages, by peer. A key encrypts for at most session.key.lifetime seconds
+//and session.key.messages messages, the message after that asks for a new one. Messages written while there is no
+//usable key wait in a queue per peer and are sent when the key arrives. The key a new one replaces is kept to decrypt
+//what the peer encrypted before it had the new key
+//
+//With session.key.prefetch, keys for recent contacts are established and renewed in the background before they run
+//out, while the old key is still used, so sending an encrypted message doesn't wait for the RSA round trip
+//
+//When both sides ask for a key at the same time, the one with the smaller username answers and the other one ignores
+//the request it got, so both end up with the same key
+public class SessionKeyManager {
+    private static final long REQUEST_TIMEOUT_NANOS = 10_000_000_000L;
+    private static final long RECENT_CONTACT_NANOS = 600_000_000_000L;
+    private static final long PREFETCH_INTERVAL_MS = 5000;
+    //Prefetching renews a key once this part of its lifetime or messages is used up
+    private static final double RENEW_AT = 0.8;
+    private final ServerConnection connection;
+    //Asked for only when a key is requested, the key pair may still be being generated until then
+    private final Supplier<byte[]> publicKey;
+    private final long lifetimeNanos;
+    private final int maxMessages;
+    private final boolean prefetch;
+    private final Map<String, Peer> peers = new HashMap<>();
+    private String ownUsername;
+
+    public SessionKeyManager(ServerConnection connection, Supplier<byte[]> publicKey) {
+        this.connection = connection;
+        this.publicKey = publicKey;
+        this.lifetimeNanos = Long.getLong("session.key.lifetime", 3600) * 1_000_000_000L;
+        this.maxMessages = Integer.getInteger("session.key.messages", 10000);
+        this.prefetch = Boolean.getBoolean("session.key.prefetch");
+    }
+
+    //Called once logged in
+    public void start(String ownUsername) {
+        synchronized (this) {
+            this.ownUsername = ownUsername;
+        }
+        if (prefetch) {
+            Thread.ofPlatform().daemon().name("session-key-prefetch").start(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(PREFETCH_INTERVAL_MS);
+                        refresh();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (JsonProcessingException e) {
+                        //The other contacts are still prefetched
+                        System.err.println(e.getMessage());
+                    }
+                }
+            });
+        }
+    }
+
+    //Returns the key to encrypt the next message to the user with and counts the message, or null when there is no
+    //usable key
+    public synchronized SecretKey keyFor(String username) {
+        Peer peer = peer(username);
+        long now = System.nanoTime();
+        peer.lastContact = now;
+        if (peer.key == null || now - peer.establishedAt >= lifetimeNanos || peer.messages >= maxMessages) {
+            return null;
+        }
+        peer.messages++;
+        return peer.key;
+    }
+
+    //Keeps the message until there is a key for the user, and asks for one unless a request is on its way
+    public void queue(String username, String message) throws JsonProcessingException {
+        synchronized (this) {
+            Peer peer = peer(username);
+            peer.pending.add(message);
+            long now = System.nanoTime();
+            if (requestPending(peer, now)) {
+                return;
+            }
+            peer.requestedAt = now;
+        }
+        requestKey(username);
+    }
+
+    //Whether to answer the user's PUBLIC_KEY with a new session key, false when our own request crossed it and the
+    //user answers that one
+    public synchronized boolean shouldAnswer(String username) {
+        Peer peer = peer(username);
+        peer.lastContact = System.nanoTime();
+        return !requestPending(peer, peer.lastContact) || ownUsername == null || ownUsername.compareToIgnoreCase(username) < 0;
+    }
+
+    //Stores a key both sides now have, returns the messages that waited for it
+    public synchronized List<String> established(String username, SecretKey key) {
+        Peer peer = peer(username);
+        peer.previousKey = peer.key;
+        peer.key = key;
+        peer.establishedAt = System.nanoTime();
+        peer.messages = peer.pending.size();
+        peer.requestedAt = -1;
+        List<String> pending = new ArrayList<>(peer.pending);
+        peer.pending.clear();
+        return pending;
+    }
+
+    //The keys a message from the user may be encrypted with, the newest first
+    public synchronized List<SecretKey> decryptionKeys(String username) {
+        Peer peer = peer(username);
+        peer.lastContact = System.nanoTime();
+        List<SecretKey> keys = new ArrayList<>(2);
+        if (peer.key != null) {
+            keys.add(peer.key);
+        }
+        if (peer.previousKey != null) {
+            keys.add(peer.previousKey);
+        }
+        return keys;
+    }
+
+    //Marks the user as a recent contact, whose key is prefetched
+    public synchronized void contact(String username) {
+        peer(username).lastContact = System.nanoTime();
+    }
+
+    //Drops everything about a user who left or isn't there, returns the number of messages that weren't sent
+    public synchronized int forget(String username) {
+        Peer peer = peers.remove(username.toLowerCase());
+        return peer == null ? 0 : peer.pending.size();
+    }
+
+    //Asks for keys for the recent contacts that have none or whose key is running out
+    private void refresh() throws JsonProcessingException {
+        List<String> usernames = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            for (Map.Entry<String, Peer> entry : peers.entrySet()) {
+                Peer peer = entry.getValue();
+                boolean recent = now - peer.lastContact < RECENT_CONTACT_NANOS;
+                boolean runningOut = peer.key == null || now - peer.establishedAt >= lifetimeNanos * RENEW_AT || peer.messages >= maxMessages * RENEW_AT;
+                if (recent && runningOut && !requestPending(peer, now)) {
+                    peer.requestedAt = now;
+                    usernames.add(entry.getKey());
+                }
+            }
+        }
+        for (String username : usernames) {
+            requestKey(username);
+        }
+    }
+
+    private Peer peer(String username) {
+        return peers.computeIfAbsent(username.toLowerCase(), key -> new Peer());
+    }
+
+    //A request that wasn't answered in time, for instance because the user wasn't there, is made again
+    private static boolean requestPending(Peer peer, long now) {
+        return peer.requestedAt != -1 && now - peer.requestedAt < REQUEST_TIMEOUT_NANOS;
+    }
+
+    //Called without the lock, the public key may still be being generated and the connection may block, the request is
+    //marked as pending before
+    private void requestKey(String username) throws JsonProcessingException {
+        connection.send("PUBLIC_KEY", new KeyMessage(username, publicKey.get()));
+    }
+
+    private static final class Peer {
+        private SecretKey key;
+        private SecretKey previousKey;
+        private long establishedAt;
+        private int messages;
+        private long requestedAt = -1;
+        private long lastContact;
+        private final Deque<String> pending = new ArrayDeque<>();
+    }
+}
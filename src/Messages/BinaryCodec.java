@@ -0,0 +1,375 @@
+package Messages;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+//Encodes the message records for the binary protocol. A frame is a four byte length, followed by that many bytes:
+//the opcode and the body. The body is a list of fields ended by END, each field being a field id, a value kind and
+//the value. Field names used by the records have a one byte id, ints take one to five bytes and byte arrays are
+//written as they are instead of as base64
+//
+//Like the JSON decoding, fields are matched by name. A record can be read from a message with only some of its
+//fields, the others are left null or 0, and fields the record doesn't have are skipped
+public final class BinaryCodec {
+    public static final int LENGTH_SIZE = 4;
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+    private static final List<String> FIELD_NAMES = List.of("status", "code", "message", "username", "key", "filename",
+            "filesize", "id", "checksum", "userList", "results", "ms", "number", "chunkSize", "streams", "algorithm", "compression",
+            "wins", "games", "player", "fastest", "mostWins");
+    //Field ids, 0 is followed by the name of a field that isn't in the list
+    private static final int NAMED_FIELD = 0;
+    private static final int END = 0xFF;
+    //Value kinds
+    private static final int NULL = 0;
+    private static final int INT = 1;
+    private static final int STRING = 2;
+    private static final int BYTES = 3;
+    private static final int LIST = 4;
+    private static final int RECORD = 5;
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return new Layout(type);
+        }
+    };
+
+    private BinaryCodec() {
+    }
+
+    //The message may be null for commands without a body
+    public static byte[] encodeFrame(String command, Object message) {
+        Output output = new Output();
+        output.skip(LENGTH_SIZE);
+        output.writeByte(Opcode.valueOf(command).code());
+        if (message != null) {
+            writeRecord(output, message);
+        }
+        output.putInt(0, output.size - LENGTH_SIZE);
+        return output.toByteArray();
+    }
+
+    public static <T> T read(byte[] bytes, int offset, int length, Class<T> type) throws JsonProcessingException {
+        if (length == 0) {
+            Layout layout = LAYOUTS.get(type);
+            return type.cast(layout.construct(layout.defaults.clone()));
+        }
+        return type.cast(readRecord(new Input(bytes, offset, offset + length), type));
+    }
+
+    private static void writeRecord(Output output, Object record) {
+        Layout layout = LAYOUTS.get(record.getClass());
+        for (int i = 0; i < layout.names.length; i++) {
+            Object value = layout.get(i, record);
+            if (value == null) {
+                continue;
+            }
+            output.writeByte(layout.ids[i]);
+            if (layout.ids[i] == NAMED_FIELD) {
+                output.writeString(layout.names[i]);
+            }
+            writeValue(output, value);
+        }
+        output.writeByte(END);
+    }
+
+    private static void writeValue(Output output, Object value) {
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof Integer number) {
+            output.writeByte(INT);
+            output.writeVarint((number << 1) ^ (number >> 31));
+        } else if (value instanceof String string) {
+            output.writeByte(STRING);
+            output.writeString(string);
+        } else if (value instanceof byte[] bytes) {
+            output.writeByte(BYTES);
+            output.writeVarint(bytes.length);
+            output.writeBytes(bytes, 0, bytes.length);
+        } else if (value instanceof Collection<?> collection) {
+            output.writeByte(LIST);
+            output.writeVarint(collection.size());
+            for (Object element : collection) {
+                writeValue(output, element);
+            }
+        } else if (value instanceof Record) {
+            output.writeByte(RECORD);
+            writeRecord(output, value);
+        } else {
+            throw new IllegalArgumentException("Can't encode " + value.getClass().getSimpleName());
+        }
+    }
+
+    private static Object readRecord(Input input, Class<?> type) throws JsonProcessingException {
+        Layout layout = LAYOUTS.get(type);
+        Object[] values = layout.defaults.clone();
+        while (true) {
+            int id = input.readByte();
+            if (id == END) {
+                return layout.construct(values);
+            }
+            int index;
+            if (id == NAMED_FIELD) {
+                index = layout.indexOf(input.readString());
+            } else if (id <= FIELD_NAMES.size()) {
+                index = layout.indexById[id];
+            } else {
+                throw new BinaryFormatException("Unknown field id " + id);
+            }
+            if (index == -1) {
+                skipValue(input);
+            } else {
+                values[index] = readValue(input, layout.types[index], layout.elementTypes[index]);
+            }
+        }
+    }
+
+    private static Object readValue(Input input, Class<?> type, Class<?> elementType) throws JsonProcessingException {
+        int kind = input.readByte();
+        if (kind == NULL && !type.isPrimitive()) {
+            return null;
+        } else if (kind == INT && (type == int.class || type == Integer.class)) {
+            int zigzag = input.readVarint();
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        } else if (kind == STRING && type == String.class) {
+            return input.readString();
+        } else if (kind == BYTES && type == byte[].class) {
+            return input.readBytes(input.readVarint());
+        } else if (kind == LIST && (type == List.class || type == Set.class) && elementType != null) {
+            int size = input.readVarint();
+            Collection<Object> collection = type == Set.class ? new LinkedHashSet<>() : new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(input, elementType, null));
+            }
+            return collection;
+        } else if (kind == RECORD && type.isRecord()) {
+            return readRecord(input, type);
+        }
+        throw new BinaryFormatException("Value of kind " + kind + " can't be read as " + type.getSimpleName());
+    }
+
+    private static void skipValue(Input input) throws JsonProcessingException {
+        switch (input.readByte()) {
+            case NULL -> {
+            }
+            case INT -> input.readVarint();
+            case STRING, BYTES -> input.skip(input.readVarint());
+            case LIST -> {
+                int size = input.readVarint();
+                for (int i = 0; i < size; i++) {
+                    skipValue(input);
+                }
+            }
+            case RECORD -> {
+                int id;
+                while ((id = input.readByte()) != END) {
+                    if (id == NAMED_FIELD) {
+                        input.skip(input.readVarint());
+                    }
+                    skipValue(input);
+                }
+            }
+            default -> throw new BinaryFormatException("Unknown value kind");
+        }
+    }
+
+    //Thrown for bodies that can't be decoded, so they are handled like JSON that can't be parsed
+    public static class BinaryFormatException extends JsonProcessingException {
+        private static final long serialVersionUID = 1L;
+
+        BinaryFormatException(String message) {
+            super(message);
+        }
+    }
+
+    //How the components of a record type are read, written and matched to field ids, worked out once per type
+    private static final class Layout {
+        private final String[] names;
+        private final int[] ids;
+        private final int[] indexById = new int[FIELD_NAMES.size() + 1];
+        private final Class<?>[] types;
+        private final Class<?>[] elementTypes;
+        private final Object[] defaults;
+        private final MethodHandle[] accessors;
+        private final MethodHandle constructor;
+
+        Layout(Class<?> type) {
+            if (!type.isRecord()) {
+                throw new IllegalArgumentException(type.getSimpleName() + " is not a record");
+            }
+            RecordComponent[] components = type.getRecordComponents();
+            names = new String[components.length];
+            ids = new int[components.length];
+            types = new Class<?>[components.length];
+            elementTypes = new Class<?>[components.length];
+            defaults = new Object[components.length];
+            accessors = new MethodHandle[components.length];
+            Arrays.fill(indexById, -1);
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                for (int i = 0; i < components.length; i++) {
+                    names[i] = components[i].getName();
+                    ids[i] = FIELD_NAMES.indexOf(names[i]) + 1;
+                    if (ids[i] != NAMED_FIELD) {
+                        indexById[ids[i]] = i;
+                    }
+                    types[i] = components[i].getType();
+                    elementTypes[i] = elementType(components[i].getGenericType());
+                    defaults[i] = types[i] == int.class ? 0 : null;
+                    accessors[i] = lookup.unreflect(components[i].getAccessor()).asType(MethodType.methodType(Object.class, Object.class));
+                }
+                constructor = lookup.unreflectConstructor(type.getDeclaredConstructor(types))
+                        .asType(MethodType.methodType(Object.class, types).generic())
+                        .asSpreader(Object[].class, components.length);
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private static Class<?> elementType(Type type) {
+            if (type instanceof ParameterizedType parameterized && parameterized.getActualTypeArguments()[0] instanceof Class<?> element) {
+                return element;
+            }
+            return null;
+        }
+
+        int indexOf(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        Object get(int index, Object record) {
+            try {
+                return accessors[index].invokeExact(record);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        Object construct(Object[] values) {
+            try {
+                return constructor.invoke(values);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] bytes = new byte[64];
+        private int size = 0;
+
+        void skip(int count) {
+            ensure(count);
+            size += count;
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length);
+            writeBytes(encoded, 0, encoded.length);
+        }
+
+        void writeBytes(byte[] source, int offset, int length) {
+            ensure(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        void putInt(int position, int value) {
+            bytes[position] = (byte) (value >>> 24);
+            bytes[position + 1] = (byte) (value >>> 16);
+            bytes[position + 2] = (byte) (value >>> 8);
+            bytes[position + 3] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensure(int count) {
+            if (size + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + count));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private final int limit;
+        private int position;
+
+        Input(byte[] bytes, int offset, int limit) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        int readByte() throws JsonProcessingException {
+            require(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarint() throws JsonProcessingException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new BinaryFormatException("Varint is too long");
+        }
+
+        String readString() throws JsonProcessingException {
+            int length = readVarint();
+            require(length);
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        byte[] readBytes(int length) throws JsonProcessingException {
+            require(length);
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        void skip(int length) throws JsonProcessingException {
+            require(length);
+            position += length;
+        }
+
+        private void require(int length) throws JsonProcessingException {
+            if (length < 0 || limit - position < length) {
+                throw new BinaryFormatException("Message ends before its last field");
+            }
+        }
+    }
+}
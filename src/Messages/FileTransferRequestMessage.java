@@ -1,4 +1,12 @@
 package Messages;
 
-public record FileTransferRequestMessage(String username, String filename, int filesize, String id, String checksum) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+//A chunkSize of 0 sends the file as one stream, like clients that don't know chunked transfers do. Such clients send
+//the MD5 checksum of the file, a stream transfer without a checksum sends its digest in the named algorithm after the
+//file instead. A chunked transfer is split over the given number of streams, 0 is taken as 1, and its chunks are
+//checked with the named algorithm and, when a compression is named, sent compressed with it. Fields left 0 or null
+//aren't written
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public record FileTransferRequestMessage(String username, String filename, int filesize, String id, String checksum, int chunkSize, int streams, String algorithm, String compression) {
 }
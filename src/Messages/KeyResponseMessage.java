@@ -0,0 +1,8 @@
+package Messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+//An error names the user the key was for, so the client can stop asking for a user who isn't there
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record KeyResponseMessage(String status, int code, String username) {
+}
@@ -0,0 +1,10 @@
+package Messages;
+
+//A player's standing over all the guessing games: the fastest time it guessed the number in, the games it guessed it
+//first in and the games it guessed it in at all
+public record LeaderboardEntry(String username, int ms, int wins, int games) {
+    @Override
+    public String toString() {
+        return username + " (best " + ms + "ms, " + wins + " wins, " + games + " games)";
+    }
+}
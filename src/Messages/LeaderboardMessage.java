@@ -0,0 +1,12 @@
+package Messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+//The answer to LEADERBOARD_REQ: the fastest players and the players with the most wins, or the player that was asked
+//for. Only the parts that are there are written, and the code only with an error
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record LeaderboardMessage(String status, @JsonInclude(JsonInclude.Include.NON_DEFAULT) int code,
+                                 LeaderboardEntry player, List<LeaderboardEntry> fastest, List<LeaderboardEntry> mostWins) {
+}
@@ -9,6 +9,7 @@ public interface MessageCodePrinter {
             case 2000 -> System.out.println("You are not logged in");
             case 3000 -> System.out.println("Connection timed out");
             case 3001 -> System.out.println("Message is too long to parse");
+            case 3002 -> System.out.println("Too many messages are waiting to be sent to you");
             case 4000 -> System.out.println("Pong sent without ping");
             case 5000 -> System.out.println("Invalid recipient provided");
             case 6000 -> System.out.println("Game has already been set up");
@@ -18,6 +19,8 @@ public interface MessageCodePrinter {
             case 6004 -> System.out.println("You are not a participant");
             case 6005 -> System.out.println("Not a number");
             case 6006 -> System.out.println("You have already guessed the number");
+            case 6007 -> System.out.println("Invalid game id");
+            case 6008 -> System.out.println("This user has no results");
             case 7000 -> System.out.println("Sender has disconnected");
             default -> System.out.println("Unknown error");
         }
@@ -29,12 +32,14 @@ public interface MessageCodePrinter {
         System.out.println("broadcast <message>: broadcast message to other users connected to the server");
         System.out.println("list_users: displays a list of currently connected users");
         System.out.println("private_message <user> <message>: send a private message to a user");
-        System.out.println("number_setup: set up a number guessing game other users can join");
-        System.out.println("number_join: join a number guessing game set up by another user");
-        System.out.println("number_guess <number>: guess a number for the number guessing game");
+        System.out.println("number_setup [id]: set up a number guessing game other users can join, with an id any number of games can run at once");
+        System.out.println("number_join [id]: join a number guessing game set up by another user");
+        System.out.println("number_guess <number> [id]: guess a number for the number guessing game");
+        System.out.println("leaderboard [username]: show the fastest players and the players with the most wins, or the results of one user");
         System.out.println("file_transfer <username> <filepath>: send a request to transfer a file to another user");
         System.out.println("file_accept <username>: accept a file transfer from a user");
         System.out.println("file_decline <username>: decline a file transfer from a user");
+        System.out.println("file_progress: show the progress of the file transfers that are running");
         System.out.println("encrypted_private_message <user> <message>: send an encrypted private message to a user");
     }
 }
@@ -0,0 +1,76 @@
+package Messages;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+//Reads and writes the message records. The reader and writer of every record type are created once and reused,
+//so a message doesn't have to look up its (de)serializers again
+public final class MessageCodec {
+    private final ObjectMapper mapper;
+    private final ClassValue<ObjectReader> readers = new ClassValue<>() {
+        @Override
+        protected ObjectReader computeValue(Class<?> type) {
+            return mapper.readerFor(type);
+        }
+    };
+    private final ClassValue<ObjectWriter> writers = new ClassValue<>() {
+        @Override
+        protected ObjectWriter computeValue(Class<?> type) {
+            return mapper.writerFor(type);
+        }
+    };
+
+    public MessageCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T read(byte[] bytes, int offset, int length, Class<T> type) throws JsonProcessingException {
+        try {
+            return (T) readers.get(type).readValue(bytes, offset, length);
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            //Reading from a byte array never fails for other reasons than the content
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T read(String json, Class<T> type) throws JsonProcessingException {
+        return (T) readers.get(type).readValue(json);
+    }
+
+    public String write(Object message) throws JsonProcessingException {
+        return writers.get(message.getClass()).writeValueAsString(message);
+    }
+
+    //Encodes a complete line "COMMAND {json}\n". The generator writes the command, the message and the line ending
+    //into a recycled buffer, so the only new array is the returned one
+    public byte[] encodeLine(String command, Object message) throws JsonProcessingException {
+        JsonFactory factory = mapper.getFactory();
+        ByteArrayBuilder builder = new ByteArrayBuilder(factory._getBufferRecycler());
+        try (JsonGenerator generator = factory.createGenerator(builder)) {
+            generator.writeRaw(command);
+            generator.writeRaw(' ');
+            writers.get(message.getClass()).writeValue(generator, message);
+            generator.writeRaw('\n');
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            //Writing to a ByteArrayBuilder never fails
+            throw new UncheckedIOException(e);
+        }
+        byte[] line = builder.toByteArray();
+        builder.release();
+        return line;
+    }
+}
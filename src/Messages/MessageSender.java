@@ -1,10 +0,0 @@
-package Messages;
-
-import java.io.PrintWriter;
-
-public interface MessageSender {
-    static void sendLine(String message, PrintWriter writer) {
-        writer.println(message);
-        writer.flush();
-    }
-}
@@ -0,0 +1,9 @@
+package Messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+//Names the game of NUMBER_SETUP_REQ, NUMBER_JOIN_REQ, NUMBER_START and NUMBER_CANCEL. Messages about the game without
+//an id have no body, the way they had before games had ids
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NumberGameMessage(String id) {
+}
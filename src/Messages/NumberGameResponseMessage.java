@@ -0,0 +1,9 @@
+package Messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+//The answer to NUMBER_SETUP_REQ and NUMBER_JOIN_REQ. The code of an OK and the id of the game without an id aren't
+//written, so those answers look the same as they did before games had ids
+@JsonInclude(JsonInclude.Include.NON_DEFAULT)
+public record NumberGameResponseMessage(String status, int code, String id) {
+}
@@ -1,4 +1,7 @@
 package Messages;
 
-public record NumberGuess(int number) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NumberGuess(int number, String id) {
 }
@@ -1,4 +1,7 @@
 package Messages;
 
-public record NumberGuessResponseMessage(String status, int code) {
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NumberGuessResponseMessage(String status, int code, String id) {
 }
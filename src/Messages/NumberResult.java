@@ -1,8 +1,10 @@
 package Messages;
 
 import Server.NumberGameResult;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.List;
 
-public record NumberResult(List<NumberGameResult> results) {
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NumberResult(List<NumberGameResult> results, String id) {
 }
@@ -0,0 +1,7 @@
+package Messages;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NumberSetupMessage(String username, String id) {
+}
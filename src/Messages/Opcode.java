@@ -0,0 +1,60 @@
+package Messages;
+
+//The numeric command codes of the binary protocol. The code of a command is its position in this list,
+//so new commands are only ever added at the end
+public enum Opcode {
+    WELCOME,
+    LOGIN,
+    LOGIN_RESP,
+    JOINED,
+    LEFT,
+    BROADCAST_REQ,
+    BROADCAST_RESP,
+    BROADCAST,
+    PING,
+    PONG,
+    PONG_ERROR,
+    DSCN,
+    BYE,
+    BYE_RESP,
+    LIST_USERS_REQ,
+    LIST_USERS_RESP,
+    PRIVATE_MESSAGE_REQ,
+    PRIVATE_MESSAGE_RESP,
+    PRIVATE_MESSAGE,
+    NUMBER_SETUP_REQ,
+    NUMBER_SETUP_RESP,
+    NUMBER_SETUP,
+    NUMBER_JOIN_REQ,
+    NUMBER_JOIN_RESP,
+    NUMBER_START,
+    NUMBER_CANCEL,
+    NUMBER_GUESS_REQ,
+    NUMBER_GUESS_RESP,
+    NUMBER_RESULT,
+    FILE_TRANSFER_REQ,
+    FILE_TRANSFER_RESP,
+    PUBLIC_KEY,
+    SESSION_KEY,
+    KEY_RESP,
+    ENCRYPTED_MESSAGE_REQ,
+    ENCRYPTED_MESSAGE_RESP,
+    ENCRYPTED_MESSAGE,
+    UNKNOWN_COMMAND,
+    PARSE_ERROR,
+    BINARY,
+    BINARY_RESP,
+    LEADERBOARD_REQ,
+    LEADERBOARD_RESP;
+
+    private static final Opcode[] OPCODES = values();
+
+    public int code() {
+        return ordinal();
+    }
+
+    //Returns null for codes this side doesn't know
+    public static Opcode forCode(int code) {
+        return code >= 0 && code < OPCODES.length ? OPCODES[code] : null;
+    }
+}
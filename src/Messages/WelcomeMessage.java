@@ -0,0 +1,4 @@
+package Messages;
+
+public record WelcomeMessage(String message) {
+}
@@ -0,0 +1,56 @@
+package Server;
+
+import Messages.Opcode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+//The commands a client can send to the server, recognised by comparing the bytes of the command token
+public enum Command {
+    LOGIN,
+    BROADCAST_REQ,
+    PONG,
+    BYE,
+    LIST_USERS_REQ,
+    PRIVATE_MESSAGE_REQ,
+    NUMBER_SETUP_REQ,
+    NUMBER_JOIN_REQ,
+    NUMBER_GUESS_REQ,
+    FILE_TRANSFER_REQ,
+    FILE_TRANSFER_RESP,
+    PUBLIC_KEY,
+    SESSION_KEY,
+    ENCRYPTED_MESSAGE_REQ,
+    LEADERBOARD_REQ,
+    BINARY,
+    UNKNOWN;
+
+    private static final Command[] COMMANDS = values();
+    private static final Command[] BY_OPCODE = new Command[Opcode.values().length];
+    private final byte[] token = name().getBytes(StandardCharsets.US_ASCII);
+
+    static {
+        Arrays.fill(BY_OPCODE, UNKNOWN);
+        for (Opcode opcode : Opcode.values()) {
+            for (Command command : COMMANDS) {
+                if (command.name().equals(opcode.name())) {
+                    BY_OPCODE[opcode.code()] = command;
+                }
+            }
+        }
+    }
+
+    public static Command match(byte[] bytes, int offset, int length) {
+        for (Command command : COMMANDS) {
+            if (command.token.length == length && command != UNKNOWN
+                    && Arrays.equals(command.token, 0, length, bytes, offset, offset + length)) {
+                return command;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public static Command forOpcode(int code) {
+        return code < BY_OPCODE.length ? BY_OPCODE[code] : UNKNOWN;
+    }
+}
@@ -0,0 +1,128 @@
+package Server;
+
+import Messages.BinaryCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+//Splits the bytes received on a connection into commands without creating strings. Lines end with \n or \r\n and
+//may arrive spread over any number of reads. The buffer is reused for every line and only grows for longer lines
+//
+//After a BINARY line every following command is a length prefixed binary frame, see BinaryCodec
+public class CommandDecoder {
+    private final Payload payload = new Payload();
+    private byte[] buffer;
+    private ByteBuffer channelView;
+    //Bytes between start and end have been read but not decoded, bytes before scanned are known not to be \n
+    private int start = 0;
+    private int scanned = 0;
+    private int end = 0;
+    private boolean binary = false;
+
+    public CommandDecoder(int initialSize) {
+        this.buffer = new byte[initialSize];
+        this.channelView = ByteBuffer.wrap(buffer);
+    }
+
+    //Returns the next complete command and points the payload at its arguments, or null when more bytes are needed
+    public Command next() throws IOException {
+        return binary ? nextFrame() : nextLine();
+    }
+
+    public Payload payload() {
+        return payload;
+    }
+
+    private Command nextLine() {
+        int newline = -1;
+        for (int i = scanned; i < end; i++) {
+            if (buffer[i] == '\n') {
+                newline = i;
+                break;
+            }
+        }
+        if (newline == -1) {
+            scanned = end;
+            return null;
+        }
+
+        int lineEnd = newline;
+        if (lineEnd > start && buffer[lineEnd - 1] == '\r') {
+            lineEnd--;
+        }
+        int tokenEnd = start;
+        while (tokenEnd < lineEnd && buffer[tokenEnd] != ' ') {
+            tokenEnd++;
+        }
+        Command command = Command.match(buffer, start, tokenEnd - start);
+        int payloadStart = Math.min(tokenEnd + 1, lineEnd);
+        payload.set(buffer, payloadStart, lineEnd - payloadStart, false);
+
+        start = newline + 1;
+        scanned = start;
+        //Switching here rather than in the handler makes sure bytes that arrived right after the line are read as frames
+        if (command == Command.BINARY) {
+            binary = true;
+        }
+        return command;
+    }
+
+    private Command nextFrame() throws IOException {
+        int available = end - start;
+        if (available < BinaryCodec.LENGTH_SIZE) {
+            return null;
+        }
+        int length = (buffer[start] & 0xFF) << 24 | (buffer[start + 1] & 0xFF) << 16
+                | (buffer[start + 2] & 0xFF) << 8 | (buffer[start + 3] & 0xFF);
+        if (length < 1 || length > BinaryCodec.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        if (available < BinaryCodec.LENGTH_SIZE + length) {
+            return null;
+        }
+
+        int opcodeIndex = start + BinaryCodec.LENGTH_SIZE;
+        Command command = Command.forOpcode(buffer[opcodeIndex] & 0xFF);
+        payload.set(buffer, opcodeIndex + 1, length - 1, true);
+        start = opcodeIndex + length;
+        scanned = start;
+        return command;
+    }
+
+    public int readFrom(InputStream inputStream) throws IOException {
+        makeRoom();
+        int read = inputStream.read(buffer, end, buffer.length - end);
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
+
+    public int readFrom(ReadableByteChannel channel) throws IOException {
+        makeRoom();
+        channelView.limit(buffer.length).position(end);
+        int read = channel.read(channelView);
+        if (read > 0) {
+            end += read;
+        }
+        return read;
+    }
+
+    //Moves the unfinished line to the front of the buffer, and only grows the buffer when that line fills it
+    private void makeRoom() {
+        if (start > 0) {
+            System.arraycopy(buffer, start, buffer, 0, end - start);
+            end -= start;
+            scanned -= start;
+            start = 0;
+        }
+        if (end == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, end);
+            buffer = grown;
+            channelView = ByteBuffer.wrap(buffer);
+        }
+    }
+}
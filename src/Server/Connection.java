@@ -0,0 +1,135 @@
+package Server;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+//A client connection with a bounded queue of outbound lines, which is drained by the connection's own writer
+public abstract class Connection implements Closeable {
+    private static final long BLOCK_TIMEOUT_MS = 5000;
+    protected final BlockingQueue<Frame> outbound = new LinkedBlockingQueue<>();
+    private final Semaphore capacity;
+    private final OverflowPolicy overflowPolicy;
+    private volatile boolean overflowed = false;
+    //Only used by the writer, frames are written in the binary protocol once the BINARY_RESP has been written
+    private boolean binary = false;
+
+    protected Connection(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = new Semaphore(capacity);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    //Never blocks the caller on the network. Only a reference to the frame is queued, so sending one frame to many connections doesn't copy it
+    //With the block policy the caller waits for room in the queue, except on an event loop: the loop would stop every
+    //connection it owns, maybe the recipient's too, so there a full queue disconnects
+    public void send(Frame frame) {
+        if (overflowPolicy == OverflowPolicy.BLOCK && EventLoop.onEventLoop()) {
+            sendWithoutBlocking(frame);
+        } else {
+            send(frame, overflowPolicy);
+        }
+    }
+
+    //For senders that must never wait, such as the heartbeat scheduler. With the block policy a full queue disconnects
+    public void sendWithoutBlocking(Frame frame) {
+        send(frame, overflowPolicy == OverflowPolicy.BLOCK ? OverflowPolicy.DISCONNECT : overflowPolicy);
+    }
+
+    private void send(Frame frame, OverflowPolicy overflowPolicy) {
+        if (overflowed) {
+            return;
+        }
+        if (reserve(overflowPolicy)) {
+            outbound.add(frame);
+            writeScheduled();
+        } else if (overflowPolicy != OverflowPolicy.DROP) {
+            overflow();
+        }
+    }
+
+    //Called by the writer with the frames it is about to write, which frees their room in the queue
+    protected int drainTo(List<Frame> frames) {
+        int start = frames.size();
+        int drained = outbound.drainTo(frames);
+        for (int i = start; i < frames.size(); i++) {
+            release(frames.get(i));
+        }
+        return drained;
+    }
+
+    protected Frame take() throws InterruptedException {
+        Frame frame = outbound.take();
+        release(frame);
+        return frame;
+    }
+
+    protected Frame poll() {
+        Frame frame = outbound.poll();
+        if (frame != null) {
+            release(frame);
+        }
+        return frame;
+    }
+
+    //Drops the frames that weren't written, for a connection that is going away
+    protected void discardQueued() {
+        Frame frame;
+        while ((frame = outbound.poll()) != null) {
+            release(frame);
+        }
+    }
+
+    //Frames queued without reserving room, like the disconnect message of an overflow, don't give any back
+    protected boolean unreserved(Frame frame) {
+        return frame == Responses.DSCN_TOO_MANY_MESSAGES;
+    }
+
+    //Called by the writer for every frame in queue order, so the switch to binary happens exactly after BINARY_RESP
+    protected byte[] encode(Frame frame) {
+        byte[] bytes = binary ? frame.binary() : frame.text();
+        if (frame == Responses.BINARY_OK) {
+            binary = true;
+        }
+        return bytes;
+    }
+
+    //Lets the writer know new lines have been queued
+    protected abstract void writeScheduled();
+
+    //Can be called from any thread. Lines that were already queued are still written before the connection is closed
+    @Override
+    public abstract void close();
+
+    private void release(Frame frame) {
+        if (!unreserved(frame)) {
+            capacity.release();
+        }
+    }
+
+    private boolean reserve(OverflowPolicy overflowPolicy) {
+        if (overflowPolicy != OverflowPolicy.BLOCK) {
+            return capacity.tryAcquire();
+        }
+        try {
+            return capacity.tryAcquire(BLOCK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void overflow() {
+        if (overflowed) {
+            return;
+        }
+        overflowed = true;
+        //The pending lines are of no use anymore, the disconnect message goes first
+        discardQueued();
+        outbound.add(Responses.DSCN_TOO_MANY_MESSAGES);
+        writeScheduled();
+        close();
+    }
+}
@@ -0,0 +1,74 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class EventLoop extends Thread {
+    private final Selector selector;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    //Shared by all connections of this loop, it is only used while one of them is writing
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+    public EventLoop(String name) throws IOException {
+        super(name);
+        this.selector = Selector.open();
+    }
+
+    //Runs the task on this event loop, so it never races with the reads and writes of the connections it owns
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == this;
+    }
+
+    //Whether the calling thread is any event loop, which must never wait
+    public static boolean onEventLoop() {
+        return Thread.currentThread() instanceof EventLoop;
+    }
+
+    ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    public void register(NioConnection connection) {
+        execute(() -> connection.register(selector));
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                NioConnection connection = (NioConnection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    connection.handleReadable();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.handleWritable();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package Server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+//Copies file transfers from the sender's socket to the receiver's socket. There is no socket to socket transferTo,
+//so the bytes go through a large direct buffer: the kernel reads into and writes from it without the extra copy to
+//and from a heap array that socket streams make. Buffers are reused by later transfers
+//
+//Besides the totals of finished transfers it keeps live counters of the running ones, for the periodic stats. When the
+//RelayScheduler limits the bandwidth, a transfer reads a quantum at a time and waits for the scheduler before writing it
+public class FileRelay {
+    private static final double GB = 1024 * 1024 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final int REQUEST_BUFFER_SIZE = 4096;
+    private final int bufferSize;
+    private final RelayScheduler scheduler;
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private long transfers = 0;
+    private long relayedBytes = 0;
+    private long relayNanos = 0;
+    //CPU time is only known for transfers on platform threads, so it is kept with its own byte count
+    private long measuredBytes = 0;
+    private long cpuNanos = 0;
+    private final Set<ActiveTransfer> activeTransfers = ConcurrentHashMap.newKeySet();
+    private final LongAdder liveBytes = new LongAdder();
+    private long reportedBytes = 0;
+    private long reportedNanos = System.nanoTime();
+
+    public FileRelay(int bufferSize, RelayScheduler scheduler) {
+        this.bufferSize = bufferSize;
+        this.scheduler = scheduler;
+    }
+
+    public RelayScheduler getScheduler() {
+        return scheduler;
+    }
+
+    //The bytes are billed to the user, see RelayScheduler.userOf
+    public long relay(SocketChannel source, SocketChannel target, String user) throws IOException {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+        long start = System.nanoTime();
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long relayed = 0;
+        ActiveTransfer activeTransfer = new ActiveTransfer(user + " " + source.socket().getRemoteSocketAddress() + " to " + target.socket().getRemoteSocketAddress(), start);
+        activeTransfers.add(activeTransfer);
+        boolean limited = scheduler.limited();
+        int quantum = scheduler.quantum(bufferSize);
+        try {
+            int read;
+            while ((read = source.read(limited ? buffer.limit(quantum) : buffer)) != -1) {
+                if (limited) {
+                    scheduler.throttle(user, read);
+                }
+                relayed += read;
+                activeTransfer.bytes = relayed;
+                liveBytes.add(read);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            activeTransfers.remove(activeTransfer);
+            buffer.clear();
+            buffers.add(buffer);
+            long cpuEnd = THREADS.getCurrentThreadCpuTime();
+            //Virtual threads report -1
+            record(relayed, System.nanoTime() - start, cpuStart == -1 || cpuEnd == -1 ? -1 : cpuEnd - cpuStart);
+        }
+        return relayed;
+    }
+
+    //In a chunked transfer the reader also sends to the writer, its requests for ranges of chunks. Those few bytes are
+    //copied on a task of their own with a small buffer and aren't counted. Either side closing ends both directions
+    public void relayBothWays(SocketChannel writer, SocketChannel reader, String user, TaskExecutor taskExecutor) throws IOException {
+        taskExecutor.execute(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+            try {
+                while (reader.read(buffer) != -1) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        writer.write(buffer);
+                    }
+                    buffer.clear();
+                }
+                writer.close();
+            } catch (AsynchronousCloseException e) {
+                //The writer's side ended first
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+        try {
+            relay(writer, reader, user);
+        } catch (AsynchronousCloseException e) {
+            //The reader closed after receiving everything it asked for
+        }
+    }
+
+    public synchronized String report() {
+        return "file relay: " + transfers + " transfers, " + String.format("%.2f", relayedBytes / GB) + " GB"
+                + ", " + throughput(relayedBytes, relayNanos) + ", "
+                + (measuredBytes == 0 ? "CPU time not measured" : cpuPerGigabyte(measuredBytes, cpuNanos));
+    }
+
+    //The bandwidth of the relay since the previous interval report and the slowest running transfer, which points at
+    //the slow link when the relay isn't the bottleneck. When the bandwidth is limited, it also has the transfers
+    //waiting for the scheduler and the share of every running transfer. Returns null when nothing was relayed and
+    //nothing is running
+    public synchronized String intervalReport() {
+        long now = System.nanoTime();
+        long bytes = liveBytes.sum();
+        double seconds = (now - reportedNanos) / 1e9;
+        long intervalBytes = bytes - reportedBytes;
+        reportedNanos = now;
+        reportedBytes = bytes;
+        if (activeTransfers.isEmpty() && intervalBytes == 0) {
+            return null;
+        }
+        ActiveTransfer slowest = null;
+        double slowestRate = 0;
+        double totalRate = 0;
+        Map<ActiveTransfer, Double> rates = new LinkedHashMap<>();
+        for (ActiveTransfer activeTransfer : activeTransfers) {
+            double rate = activeTransfer.sample(now);
+            rates.put(activeTransfer, rate);
+            totalRate += rate;
+            if (slowest == null || rate < slowestRate) {
+                slowest = activeTransfer;
+                slowestRate = rate;
+            }
+        }
+        StringBuilder report = new StringBuilder("file relay: ").append(rates.size()).append(" active, ")
+                .append(String.format("%.1f MB/s", intervalBytes / (1024.0 * 1024) / seconds)).append(" over the last ").append(Math.round(seconds)).append(" s");
+        if (slowest != null) {
+            report.append(", slowest ").append(slowest.description).append(" at ").append(String.format("%.1f MB/s", slowestRate / (1024 * 1024)));
+        }
+        if (scheduler.limited()) {
+            report.append(", ").append(scheduler.queueDepth()).append(" throttled");
+            for (Map.Entry<ActiveTransfer, Double> entry : rates.entrySet()) {
+                report.append(String.format("%n  %s at %.1f MB/s, %.0f%%", entry.getKey().description, entry.getValue() / (1024 * 1024),
+                        totalRate == 0 ? 0 : entry.getValue() * 100 / totalRate));
+            }
+        }
+        return report.toString();
+    }
+
+    private synchronized void record(long bytes, long nanos, long cpu) {
+        transfers++;
+        relayedBytes += bytes;
+        relayNanos += nanos;
+        if (cpu != -1) {
+            measuredBytes += bytes;
+            cpuNanos += cpu;
+        }
+    }
+
+    private static String throughput(long bytes, long nanos) {
+        return String.format("%.0f MB/s", nanos == 0 ? 0 : bytes / (1024.0 * 1024) / (nanos / 1e9));
+    }
+
+    private static String cpuPerGigabyte(long bytes, long cpuNanos) {
+        return String.format("%.2f CPU s per GB", bytes == 0 ? 0 : cpuNanos / 1e9 / (bytes / GB));
+    }
+
+    //Only the relaying thread writes bytes, the sample is only used by intervalReport
+    private static final class ActiveTransfer {
+        private final String description;
+        private volatile long bytes = 0;
+        private long sampleNanos;
+        private long sampleBytes = 0;
+
+        ActiveTransfer(String description, long startNanos) {
+            this.description = description;
+            this.sampleNanos = startNanos;
+        }
+
+        //Bytes per second since the previous sample
+        double sample(long now) {
+            long current = bytes;
+            double rate = (current - sampleBytes) / Math.max((now - sampleNanos) / 1e9, 1e-9);
+            sampleNanos = now;
+            sampleBytes = current;
+            return rate;
+        }
+    }
+}
@@ -1,52 +1,63 @@
 package Server;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 public class FileTransferSetupThread extends Thread {
-    private final Map<String, OutputStream> fileReaders = new HashMap<>();
-    private final Map<String, InputStream> fileWriters = new HashMap<>();
+    private final TaskExecutor taskExecutor;
+    private final FileRelay fileRelay;
+    private final TransferRendezvous rendezvous;
+    //0 leaves the socket buffers to the operating system
+    private final int socketBufferSize;
+    private final long handshakeTimeoutMs;
+
+    public FileTransferSetupThread(TaskExecutor taskExecutor, FileRelay fileRelay, TransferRendezvous rendezvous,
+                                   int socketBufferSize, long handshakeTimeoutMs) {
+        this.taskExecutor = taskExecutor;
+        this.fileRelay = fileRelay;
+        this.rendezvous = rendezvous;
+        this.socketBufferSize = socketBufferSize;
+        this.handshakeTimeoutMs = handshakeTimeoutMs;
+    }
 
     @Override
     public void run() {
         try {
-            ServerSocket serverSocket = new ServerSocket(1338);
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            if (socketBufferSize > 0) {
+                //Accepted sockets inherit the receive buffer, it has to be set before binding to get a large window
+                serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+            }
+            serverChannel.bind(new InetSocketAddress(1338));
             while (true) {
-                Socket socket = serverSocket.accept();
+                SocketChannel channel = serverChannel.accept();
+                if (socketBufferSize > 0) {
+                    channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+                }
 
-                new FileTransferThread(socket, this).start();
+                taskExecutor.execute(new FileTransferThread(channel, this));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void addReader(String id, OutputStream outputStream) {
-        fileReaders.put(id, outputStream);
-    }
-
-    public OutputStream removeReader(String id) {
-        return fileReaders.remove(id);
-    }
-
-    public boolean containsReader(String id) {
-        return fileReaders.containsKey(id);
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
     }
 
-    public void addWriter(String id, InputStream inputStream) {
-        fileWriters.put(id, inputStream);
+    public FileRelay getFileRelay() {
+        return fileRelay;
     }
 
-    public InputStream removeWriter(String id) {
-        return fileWriters.remove(id);
+    public TransferRendezvous getRendezvous() {
+        return rendezvous;
     }
 
-    public boolean containsWriter(String id) {
-        return fileWriters.containsKey(id);
+    public long getHandshakeTimeoutMs() {
+        return handshakeTimeoutMs;
     }
-}
\ No newline at end of file
+}
@@ -1,47 +1,77 @@
 package Server;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Future;
 
-public class FileTransferThread extends Thread {
-    private final Socket socket;
+public class FileTransferThread implements Runnable {
+    //One role byte followed by the 36 character id of the transfer. The role is 'r' or 'w' for the reader and writer of
+    //a file sent as one stream, 'R' or 'W' for those of a chunked transfer
+    private static final int HANDSHAKE_LENGTH = 37;
+    private final SocketChannel channel;
     private final FileTransferSetupThread fileTransferSetupThread;
 
-    public FileTransferThread(Socket socket, FileTransferSetupThread fileTransferSetupThread) {
-        this.socket = socket;
+    public FileTransferThread(SocketChannel channel, FileTransferSetupThread fileTransferSetupThread) {
+        this.channel = channel;
         this.fileTransferSetupThread = fileTransferSetupThread;
     }
 
     public void run() {
+        SocketChannel peerChannel = null;
         try {
-            InputStream inputStream = socket.getInputStream();
-            OutputStream outputStream = socket.getOutputStream();
-            byte[] clientRole = inputStream.readNBytes(1);
-            String uniqueConnectionId = new String(inputStream.readNBytes(36));
+            //A blocking channel read has no timeout, closing the channel is what ends a handshake that never comes
+            Future<?> handshakeTimeout = fileTransferSetupThread.getTaskExecutor().schedule(this::close, fileTransferSetupThread.getHandshakeTimeoutMs());
+            //Reads exactly the handshake, anything the client sent after it is left for the relay
+            ByteBuffer handshake = ByteBuffer.allocate(HANDSHAKE_LENGTH);
+            while (handshake.hasRemaining()) {
+                if (channel.read(handshake) == -1) {
+                    handshakeTimeout.cancel(false);
+                    close();
+                    return;
+                }
+            }
+            handshakeTimeout.cancel(false);
+            byte clientRole = handshake.get(0);
+            String uniqueConnectionId = new String(handshake.array(), 1, HANDSHAKE_LENGTH - 1, StandardCharsets.UTF_8);
+            if (clientRole != 'r' && clientRole != 'w' && clientRole != 'R' && clientRole != 'W') {
+                close();
+                return;
+            }
 
-            if (clientRole[0] == 'r') {
-                if (fileTransferSetupThread.containsWriter(uniqueConnectionId)) {
-                    InputStream writerInputStream = fileTransferSetupThread.removeWriter(uniqueConnectionId);
-                    writerInputStream.transferTo(outputStream);
-                    socket.close();
-                    writerInputStream.close();
+            peerChannel = fileTransferSetupThread.getRendezvous().pair(uniqueConnectionId, clientRole, channel);
+            if (peerChannel != null) {
+                FileRelay fileRelay = fileTransferSetupThread.getFileRelay();
+                String user = fileRelay.getScheduler().userOf(uniqueConnectionId);
+                boolean reader = clientRole == 'r' || clientRole == 'R';
+                SocketChannel writerChannel = reader ? peerChannel : channel;
+                SocketChannel readerChannel = reader ? channel : peerChannel;
+                if (Character.isUpperCase(clientRole)) {
+                    fileRelay.relayBothWays(writerChannel, readerChannel, user, fileTransferSetupThread.getTaskExecutor());
                 } else {
-                    fileTransferSetupThread.addReader(uniqueConnectionId, outputStream);
+                    fileRelay.relay(writerChannel, readerChannel, user);
                 }
-            } else if (clientRole[0] == 'w') {
-                if (fileTransferSetupThread.containsReader(uniqueConnectionId)) {
-                    OutputStream readerOutputStream = fileTransferSetupThread.removeReader(uniqueConnectionId);
-                    inputStream.transferTo(readerOutputStream);
-                    socket.close();
-                    readerOutputStream.close();
-                } else {
-                    fileTransferSetupThread.addWriter(uniqueConnectionId, inputStream);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (peerChannel != null) {
+                close();
+                try {
+                    peerChannel.close();
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
                 }
             }
+        }
+    }
+
+    private void close() {
+        try {
+            channel.close();
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            System.err.println(e.getMessage());
         }
     }
 }
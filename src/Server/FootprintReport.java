@@ -0,0 +1,21 @@
+package Server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+
+public interface FootprintReport {
+    long MB = 1024 * 1024;
+
+    static void print(String moment, TaskExecutor taskExecutor) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        //The thread MXBean only counts platform threads, virtual threads show up as running tasks
+        System.out.println("[" + moment + "] "
+                + (taskExecutor.usesVirtualThreads() ? "virtual" : "platform") + " threads"
+                + ", heap used " + heap.getUsed() / MB + " MB of " + heap.getCommitted() / MB + " MB committed"
+                + ", platform threads " + threads.getThreadCount() + " (peak " + threads.getPeakThreadCount() + ")"
+                + ", running tasks " + taskExecutor.getRunningTasks());
+    }
+}
@@ -0,0 +1,46 @@
+package Server;
+
+import Messages.BinaryCodec;
+import Messages.MessageCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.nio.charset.StandardCharsets;
+
+//A complete encoded message, including the line ending or length prefix. The bytes are never changed after encoding,
+//so the same frame can be queued for any number of connections. The text encoding is made right away, the binary
+//one the first time a connection using the binary protocol writes the frame
+public final class Frame {
+    private final String command;
+    private final Object message;
+    private final byte[] text;
+    private volatile byte[] binary;
+
+    private Frame(String command, Object message, byte[] text) {
+        this.command = command;
+        this.message = message;
+        this.text = text;
+    }
+
+    //For commands without a message, such as PING
+    public static Frame of(String command) {
+        return new Frame(command, null, (command + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Frame of(String command, Object message, MessageCodec codec) throws JsonProcessingException {
+        return new Frame(command, message, codec.encodeLine(command, message));
+    }
+
+    byte[] text() {
+        return text;
+    }
+
+    //Encoding it twice when two writers race is harmless, both get the same bytes
+    byte[] binary() {
+        byte[] bytes = binary;
+        if (bytes == null) {
+            bytes = BinaryCodec.encodeFrame(command, message);
+            binary = bytes;
+        }
+        return bytes;
+    }
+}
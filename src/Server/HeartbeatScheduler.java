@@ -0,0 +1,171 @@
+package Server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+//Sends the PING of every logged in session from a single thread, using a hashed timer wheel.
+//Each tick the thread only visits the heartbeats in one slot of the wheel, so starting, rescheduling and cancelling
+//a heartbeat are all O(1)
+public final class HeartbeatScheduler extends Thread {
+    private static final long TICK_MS = 10;
+    private static final int WHEEL_SIZE = 1024;
+    private static final Frame PING = Frame.of("PING");
+    private final long pingIntervalMs;
+    private final long pongTimeoutMs;
+    private final Heartbeat[] wheel = new Heartbeat[WHEEL_SIZE];
+    private final Queue<Heartbeat> started = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private long tick = 0;
+    private volatile int active = 0;
+    private long sweeps = 0;
+    private long totalSweepNanos = 0;
+    private long maxSweepNanos = 0;
+    private int maxFiredPerSweep = 0;
+
+    public HeartbeatScheduler(long pingIntervalMs, long pongTimeoutMs) {
+        super("heartbeat-scheduler");
+        setDaemon(true);
+        this.pingIntervalMs = pingIntervalMs;
+        this.pongTimeoutMs = pongTimeoutMs;
+    }
+
+    //Can be called from any thread, the first PING is sent one interval from now
+    public Heartbeat start(Connection connection, PingInfo pingInfo) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        Heartbeat heartbeat = new Heartbeat(connection, pingInfo, ticks(elapsedMs + pingIntervalMs));
+        started.add(heartbeat);
+        return heartbeat;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            waitForTick(tick + 1);
+            tick++;
+
+            long sweepStart = System.nanoTime();
+            Heartbeat heartbeat;
+            while ((heartbeat = started.poll()) != null) {
+                active++;
+                schedule(heartbeat, heartbeat.deadline);
+            }
+            int fired = sweep((int) (tick % WHEEL_SIZE));
+            recordSweep(System.nanoTime() - sweepStart, fired);
+        }
+    }
+
+    public synchronized String report() {
+        return "heartbeats: " + active + " active, " + sweeps + " sweeps, average sweep "
+                + (sweeps == 0 ? 0 : totalSweepNanos / sweeps / 1000) + " us, slowest sweep "
+                + maxSweepNanos / 1000 + " us, most heartbeats due in one sweep " + maxFiredPerSweep;
+    }
+
+    private int sweep(int slot) {
+        int fired = 0;
+        Heartbeat heartbeat = wheel[slot];
+        while (heartbeat != null) {
+            Heartbeat next = heartbeat.next;
+            if (heartbeat.cancelled || !heartbeat.pingInfo.isConnected()) {
+                unlink(heartbeat);
+                active--;
+            } else if (heartbeat.deadline <= tick) {
+                unlink(heartbeat);
+                fire(heartbeat);
+                fired++;
+            }
+            heartbeat = next;
+        }
+        return fired;
+    }
+
+    private void fire(Heartbeat heartbeat) {
+        PingInfo pingInfo = heartbeat.pingInfo;
+        if (!heartbeat.awaitingPong) {
+            pingInfo.startPing();
+            heartbeat.connection.sendWithoutBlocking(PING);
+            heartbeat.awaitingPong = true;
+            schedule(heartbeat, tick + ticks(pongTimeoutMs));
+        } else if (pingInfo.isAwaitingPing()) {
+            pingInfo.disconnect();
+            heartbeat.connection.sendWithoutBlocking(Responses.DSCN_TIMED_OUT);
+            heartbeat.connection.close();
+            active--;
+        } else {
+            heartbeat.awaitingPong = false;
+            schedule(heartbeat, tick + ticks(pingIntervalMs - pongTimeoutMs));
+        }
+    }
+
+    private void schedule(Heartbeat heartbeat, long deadline) {
+        heartbeat.deadline = Math.max(deadline, tick + 1);
+        int slot = (int) (heartbeat.deadline % WHEEL_SIZE);
+        heartbeat.slot = slot;
+        heartbeat.previous = null;
+        heartbeat.next = wheel[slot];
+        if (wheel[slot] != null) {
+            wheel[slot].previous = heartbeat;
+        }
+        wheel[slot] = heartbeat;
+    }
+
+    private void unlink(Heartbeat heartbeat) {
+        if (heartbeat.previous != null) {
+            heartbeat.previous.next = heartbeat.next;
+        } else {
+            wheel[heartbeat.slot] = heartbeat.next;
+        }
+        if (heartbeat.next != null) {
+            heartbeat.next.previous = heartbeat.previous;
+        }
+        heartbeat.previous = null;
+        heartbeat.next = null;
+    }
+
+    private synchronized void recordSweep(long nanos, int fired) {
+        sweeps++;
+        totalSweepNanos += nanos;
+        maxSweepNanos = Math.max(maxSweepNanos, nanos);
+        maxFiredPerSweep = Math.max(maxFiredPerSweep, fired);
+    }
+
+    private void waitForTick(long target) {
+        long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(target * TICK_MS);
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static long ticks(long ms) {
+        return (ms + TICK_MS - 1) / TICK_MS;
+    }
+
+    //The heartbeat state of one session. Only the scheduler thread touches it, except for cancelling it
+    public static class Heartbeat {
+        private final Connection connection;
+        private final PingInfo pingInfo;
+        private volatile boolean cancelled = false;
+        private boolean awaitingPong = false;
+        private long deadline;
+        private int slot;
+        private Heartbeat previous;
+        private Heartbeat next;
+
+        private Heartbeat(Connection connection, PingInfo pingInfo, long deadline) {
+            this.connection = connection;
+            this.pingInfo = pingInfo;
+            this.deadline = deadline;
+        }
+
+        //The scheduler drops the heartbeat the next time its slot comes around
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
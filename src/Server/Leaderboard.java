@@ -0,0 +1,89 @@
+package Server;
+
+import Messages.LeaderboardEntry;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+//The standings over all the guessing games that ever ended: every player's best time, wins and games. A player's best
+//time only goes down and its wins only go up, so a player only leaves a top when another one passes it. That keeps
+//both tops exact while only the players in them are kept in order. A query reads a top or looks up one player, and
+//never sorts or waits for a change
+public class Leaderboard {
+    //The number of players in the tops
+    public static final int SIZE = 10;
+    private static final Comparator<LeaderboardEntry> BY_TIME = Comparator.comparingInt(LeaderboardEntry::ms)
+            .thenComparing(LeaderboardEntry::username, String.CASE_INSENSITIVE_ORDER);
+    private static final Comparator<LeaderboardEntry> BY_WINS = Comparator.comparingInt((LeaderboardEntry entry) -> -entry.wins())
+            .thenComparing(BY_TIME);
+    //By lowercase username, like the sessions, the entry has the name the player last played under
+    private final Map<String, LeaderboardEntry> players = new ConcurrentHashMap<>();
+    //Changed under the lock of the leaderboard, copied out when they change
+    private final List<LeaderboardEntry> byTime = new ArrayList<>(SIZE + 1);
+    private final List<LeaderboardEntry> byWins = new ArrayList<>(SIZE + 1);
+    private volatile List<LeaderboardEntry> fastest = List.of();
+    private volatile List<LeaderboardEntry> mostWins = List.of();
+
+    //Adds the results of a game, in the order the players guessed the number
+    public synchronized void record(List<NumberGameResult> results) {
+        for (int rank = 0; rank < results.size(); rank++) {
+            NumberGameResult result = results.get(rank);
+            update(result.username(), result.ms(), rank == 0 ? 1 : 0, 1);
+        }
+    }
+
+    //Adds the standing of a player over several games
+    public synchronized void merge(LeaderboardEntry entry) {
+        update(entry.username(), entry.ms(), entry.wins(), entry.games());
+    }
+
+    public List<LeaderboardEntry> fastest() {
+        return fastest;
+    }
+
+    public List<LeaderboardEntry> mostWins() {
+        return mostWins;
+    }
+
+    //Returns null for a player that never guessed the number
+    public LeaderboardEntry player(String username) {
+        return players.get(username.toLowerCase(Locale.ROOT));
+    }
+
+    public Collection<LeaderboardEntry> players() {
+        return players.values();
+    }
+
+    public int size() {
+        return players.size();
+    }
+
+    private void update(String username, int ms, int wins, int games) {
+        String key = username.toLowerCase(Locale.ROOT);
+        LeaderboardEntry previous = players.get(key);
+        LeaderboardEntry next = previous == null ? new LeaderboardEntry(username, ms, wins, games)
+                : new LeaderboardEntry(username, Math.min(previous.ms(), ms), previous.wins() + wins, previous.games() + games);
+        players.put(key, next);
+        if (place(byTime, previous, next, BY_TIME)) {
+            fastest = List.copyOf(byTime);
+        }
+        if (place(byWins, previous, next, BY_WINS)) {
+            mostWins = List.copyOf(byWins);
+        }
+    }
+
+    //Puts the new entry of a player in its place in the top, returns whether the top changed
+    private static boolean place(List<LeaderboardEntry> top, LeaderboardEntry previous, LeaderboardEntry next,
+                                 Comparator<LeaderboardEntry> order) {
+        boolean removed = previous != null && top.remove(previous);
+        if (!removed && top.size() == SIZE && order.compare(next, top.get(SIZE - 1)) >= 0) {
+            return false;
+        }
+        int index = Collections.binarySearch(top, next, order);
+        top.add(index < 0 ? -index - 1 : index, next);
+        if (top.size() > SIZE) {
+            top.remove(SIZE);
+        }
+        return true;
+    }
+}
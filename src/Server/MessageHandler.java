@@ -0,0 +1,375 @@
+package Server;
+
+import Messages.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+
+import java.io.IOException;
+
+import static Server.Responses.*;
+
+//Handles the commands of a single connection, independent of how its lines are read from the network
+public class MessageHandler {
+    private final Connection connection;
+    private final MessageCodec codec;
+    private final PingInfo pingInfo;
+    private final Server server;
+    private final SessionRegistry sessions;
+    private final NumberGames numberGames;
+    private final Leaderboard leaderboard;
+    private final RelayScheduler relayScheduler;
+    private String username;
+    private Session session;
+    private HeartbeatScheduler.Heartbeat heartbeat;
+
+    public MessageHandler(Connection connection, MessageCodec codec, PingInfo pingInfo, Server server) {
+        this.connection = connection;
+        this.codec = codec;
+        this.pingInfo = pingInfo;
+        this.server = server;
+        this.sessions = server.getSessions();
+        this.numberGames = server.getNumberGames();
+        this.leaderboard = server.getLeaderboard();
+        this.relayScheduler = server.getRelayScheduler();
+    }
+
+    public void handleWelcome() {
+        connection.send(WELCOME);
+    }
+
+    public void handleCommand(Command command, Payload payload) throws IOException {
+        switch (command) {
+            case LOGIN -> handleLogin(payload);
+            case BROADCAST_REQ -> handleBroadcastRequest(payload);
+            case PONG -> handlePong();
+            case BYE -> handleBye();
+            case LIST_USERS_REQ -> handleListUsersRequest();
+            case PRIVATE_MESSAGE_REQ -> handlePrivateMessageRequest(payload);
+            case NUMBER_SETUP_REQ -> handleNumberSetupRequest(payload);
+            case NUMBER_JOIN_REQ -> handleNumberJoinRequest(payload);
+            case NUMBER_GUESS_REQ -> handleNumberGuessRequest(payload);
+            case FILE_TRANSFER_REQ -> handleFileTransferRequest(payload);
+            case FILE_TRANSFER_RESP -> handleFileTransferResponse(payload);
+            case PUBLIC_KEY -> handlePublicKey(payload);
+            case SESSION_KEY -> handleSessionKey(payload);
+            case ENCRYPTED_MESSAGE_REQ -> handleEncryptedMessageRequest(payload);
+            case LEADERBOARD_REQ -> handleLeaderboardRequest(payload);
+            case BINARY -> connection.send(BINARY_OK);
+            case UNKNOWN -> connection.send(UNKNOWN_COMMAND);
+        }
+    }
+
+    //Called when the client closed the connection
+    public void handleEndOfStream() throws IOException {
+        handleBye();
+    }
+
+    public void handleDisconnect() {
+        if (heartbeat != null) {
+            heartbeat.cancel();
+        }
+        if (session != null && sessions.unregister(session)) {
+            relayScheduler.forget(username);
+            try {
+                broadcastLeft();
+            } catch (JsonProcessingException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    public boolean isConnected() {
+        return pingInfo.isConnected();
+    }
+
+    public void disconnect() {
+        pingInfo.disconnect();
+    }
+
+    private void handleLogin(Payload payload) {
+        try {
+            if (payload.isEmpty()) {
+                connection.send(LOGIN_INVALID_USERNAME);
+            } else {
+                GenericMessage loginMessage = read(payload, GenericMessage.class);
+                boolean validLogin = true;
+                int loginErrorCode = -1;
+
+                if (!loginMessage.username().toUpperCase().matches("[A-Z0-9_]{3,14}")) { //If username is invalid
+                    loginErrorCode = 1001;
+                    validLogin = false;
+                } else if (username != null) { //If user is already logged in
+                    loginErrorCode = 1002;
+                    validLogin = false;
+                } else { //If user with username is already logged in, registering checks and adds in one atomic step
+                    Session newSession = new Session(loginMessage.username(), connection, pingInfo);
+                    if (sessions.register(newSession)) {
+                        session = newSession;
+                    } else {
+                        loginErrorCode = 1000;
+                        validLogin = false;
+                    }
+                }
+
+                if (!validLogin) {
+                    connection.send(Frame.of("LOGIN_RESP", new ErrorResponseMessage("ERROR", loginErrorCode), codec));
+                } else {
+                    username = loginMessage.username();
+                    connection.send(LOGIN_OK);
+                    sessions.broadcast(Frame.of("JOINED", new UsernameMessage(username), codec), session); //Sends JOINED message to all users except the one that just joined
+                    heartbeat = server.getHeartbeats().start(connection, pingInfo);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            connection.send(PARSE_ERROR);
+        }
+    }
+
+    private void handleBroadcastRequest(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(BROADCAST_NOT_LOGGED_IN);
+        } else {
+            try {
+                GenericMessage broadcastRequestMessage = read(payload, GenericMessage.class);
+                BroadcastMessage broadcast = new BroadcastMessage(username, broadcastRequestMessage.message());
+                //The broadcast is encoded once, every recipient gets the same frame
+                connection.send(BROADCAST_OK);
+                sessions.broadcast(Frame.of("BROADCAST", broadcast, codec), session);
+            } catch (JsonProcessingException e) {
+                connection.send(PARSE_ERROR);
+            }
+        }
+    }
+
+    private void handlePong() throws JsonProcessingException {
+        if (pingInfo.isAwaitingPing()) {
+            pingInfo.stopPing();
+        } else {
+            connection.send(PONG_ERROR);
+        }
+    }
+
+    private void handleBye() throws JsonProcessingException {
+        connection.send(BYE_OK);
+        if (session != null && sessions.unregister(session)) {
+            relayScheduler.forget(username);
+            broadcastLeft();
+        }
+        pingInfo.disconnect();
+    }
+
+    private void broadcastLeft() throws JsonProcessingException {
+        sessions.broadcast(Frame.of("LEFT", new UsernameMessage(username), codec), null);
+    }
+
+    private void handleListUsersRequest() throws JsonProcessingException {
+        if (username == null) {
+            connection.send(LIST_USERS_NOT_LOGGED_IN);
+        } else {
+            UserListMessage userListMessage = new UserListMessage(sessions.usernames(), "OK");
+
+            connection.send(Frame.of("LIST_USERS_RESP", userListMessage, codec));
+        }
+    }
+
+    private void handlePrivateMessageRequest(Payload payload) throws JsonProcessingException {
+        GenericMessage privateMessageRequestMessage = read(payload, GenericMessage.class);
+        boolean validRecipient = false;
+
+        if (username == null) {
+            connection.send(PRIVATE_MESSAGE_NOT_LOGGED_IN);
+        } else {
+            Session recipient = sessions.find(privateMessageRequestMessage.username());
+            if (recipient != null) {
+                validRecipient = true;
+                //Sends username of the sender and the message to the recipient
+                recipient.connection().send(Frame.of("PRIVATE_MESSAGE", new BroadcastMessage(username, privateMessageRequestMessage.message()), codec));
+            }
+
+            if (validRecipient) {
+                connection.send(PRIVATE_MESSAGE_OK);
+            } else {
+                connection.send(PRIVATE_MESSAGE_UNKNOWN_RECIPIENT);
+            }
+        }
+    }
+
+    private void handleNumberSetupRequest(Payload payload) throws JsonProcessingException {
+        String id;
+        try {
+            id = readGameId(payload);
+        } catch (JsonProcessingException e) {
+            connection.send(PARSE_ERROR);
+            return;
+        }
+        int errorCode = username == null ? 2000 : numberGames.setup(id, username, connection);
+        if (errorCode == 0) {
+            connection.send(id == null ? NUMBER_SETUP_OK : Frame.of("NUMBER_SETUP_RESP", new NumberGameResponseMessage("OK", 0, id), codec));
+            sessions.broadcast(Frame.of("NUMBER_SETUP", new NumberSetupMessage(username, id), codec), session);
+        } else {
+            connection.send(Frame.of("NUMBER_SETUP_RESP", new NumberGameResponseMessage("ERROR", errorCode, id), codec));
+        }
+    }
+
+    private void handleNumberJoinRequest(Payload payload) throws JsonProcessingException {
+        String id;
+        try {
+            id = readGameId(payload);
+        } catch (JsonProcessingException e) {
+            connection.send(PARSE_ERROR);
+            return;
+        }
+        int errorCode = username == null ? 2000 : numberGames.join(id, username, connection);
+        if (errorCode == 0) {
+            connection.send(id == null ? NUMBER_JOIN_OK : Frame.of("NUMBER_JOIN_RESP", new NumberGameResponseMessage("OK", 0, id), codec));
+        } else {
+            connection.send(Frame.of("NUMBER_JOIN_RESP", new NumberGameResponseMessage("ERROR", errorCode, id), codec));
+        }
+    }
+
+    private void handleNumberGuessRequest(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(Frame.of("NUMBER_GUESS_RESP", new ErrorResponseMessage("ERROR", 2000), codec));
+            return;
+        }
+        NumberGuess guessMessage;
+        try {
+            guessMessage = read(payload, NumberGuess.class);
+        } catch (InvalidFormatException e) {
+            connection.send(NUMBER_GUESS_INVALID);
+            return;
+        } catch (JsonProcessingException e) {
+            connection.send(PARSE_ERROR);
+            return;
+        }
+        String id = guessMessage.id();
+        int code = numberGames.guess(id, username, guessMessage.number());
+        boolean answered = code == NumberGame.TOO_LOW || code == NumberGame.CORRECT || code == NumberGame.TOO_HIGH;
+        if (id == null && answered) {
+            connection.send(code == NumberGame.CORRECT ? NUMBER_GUESS_CORRECT : code == NumberGame.TOO_LOW ? NUMBER_GUESS_TOO_LOW : NUMBER_GUESS_TOO_HIGH);
+        } else {
+            connection.send(Frame.of("NUMBER_GUESS_RESP", new NumberGuessResponseMessage(answered ? "OK" : "ERROR", code, id), codec));
+        }
+    }
+
+    //NUMBER_SETUP_REQ and NUMBER_JOIN_REQ have no body when they are about the game without an id
+    private String readGameId(Payload payload) throws JsonProcessingException {
+        return payload.length() == 0 ? null : read(payload, NumberGameMessage.class).id();
+    }
+
+    //Without a body the answer is the fastest players and the players with the most wins, with a username it is the
+    //standing of that player
+    private void handleLeaderboardRequest(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(LEADERBOARD_NOT_LOGGED_IN);
+            return;
+        }
+        String player;
+        try {
+            player = payload.length() == 0 ? null : read(payload, UsernameMessage.class).username();
+        } catch (JsonProcessingException e) {
+            connection.send(PARSE_ERROR);
+            return;
+        }
+        if (player == null) {
+            connection.send(Frame.of("LEADERBOARD_RESP", new LeaderboardMessage("OK", 0, null, leaderboard.fastest(), leaderboard.mostWins()), codec));
+        } else {
+            LeaderboardEntry entry = leaderboard.player(player);
+            if (entry == null) {
+                connection.send(LEADERBOARD_UNKNOWN_PLAYER);
+            } else {
+                connection.send(Frame.of("LEADERBOARD_RESP", new LeaderboardMessage("OK", 0, entry, null, null), codec));
+            }
+        }
+    }
+
+    private void handleFileTransferRequest(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(FILE_TRANSFER_NOT_LOGGED_IN);
+        } else {
+            FileTransferRequestMessage fileTransferRequestMessage = read(payload, FileTransferRequestMessage.class);
+
+            Session recipient = sessions.find(fileTransferRequestMessage.username());
+            if (recipient != null) {
+                relayScheduler.register(fileTransferRequestMessage.id(), Math.max(1, fileTransferRequestMessage.streams()), username);
+                recipient.connection().send(Frame.of("FILE_TRANSFER_REQ", new FileTransferRequestMessage(username, fileTransferRequestMessage.filename(), fileTransferRequestMessage.filesize(), fileTransferRequestMessage.id(), fileTransferRequestMessage.checksum(), fileTransferRequestMessage.chunkSize(), fileTransferRequestMessage.streams(), fileTransferRequestMessage.algorithm(), fileTransferRequestMessage.compression()), codec));
+            } else {
+                connection.send(FILE_TRANSFER_UNKNOWN_RECIPIENT);
+            }
+        }
+    }
+
+    private void handleFileTransferResponse(Payload payload) throws JsonProcessingException {
+        FileTransferResponseMessage fileTransferResponseMessage = read(payload, FileTransferResponseMessage.class);
+
+        Session recipient = sessions.find(fileTransferResponseMessage.username());
+        if (recipient != null) {
+            recipient.connection().send(Frame.of("FILE_TRANSFER_RESP", new FileTransferResponseMessage("OK", username, fileTransferResponseMessage.code()), codec));
+        } else {
+            connection.send(FILE_TRANSFER_NO_REQUEST);
+        }
+    }
+
+    private void handlePublicKey(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(KEY_NOT_LOGGED_IN);
+        } else {
+            KeyMessage publicKeyMessage = read(payload, KeyMessage.class);
+
+            Session recipient = sessions.find(publicKeyMessage.username());
+            if (recipient != null) {
+                recipient.connection().send(Frame.of("PUBLIC_KEY", new KeyMessage(username, publicKeyMessage.key()), codec));
+            } else {
+                connection.send(keyUnknownRecipient(publicKeyMessage.username()));
+            }
+        }
+    }
+
+    private void handleSessionKey(Payload payload) throws JsonProcessingException {
+        if (username == null) {
+            connection.send(KEY_NOT_LOGGED_IN);
+        } else {
+            KeyMessage sessionKeyMessage = read(payload, KeyMessage.class);
+
+            Session recipient = sessions.find(sessionKeyMessage.username());
+            if (recipient != null) {
+                recipient.connection().send(Frame.of("SESSION_KEY", new KeyMessage(username, sessionKeyMessage.key()), codec));
+            } else {
+                connection.send(keyUnknownRecipient(sessionKeyMessage.username()));
+            }
+        }
+    }
+
+    private Frame keyUnknownRecipient(String recipient) throws JsonProcessingException {
+        return Frame.of("KEY_RESP", new KeyResponseMessage("ERROR", 5000, recipient), codec);
+    }
+
+    private void handleEncryptedMessageRequest(Payload payload) throws JsonProcessingException {
+        EncryptedPrivateMessage privateMessageRequestMessage = read(payload, EncryptedPrivateMessage.class);
+        boolean validRecipient = false;
+
+        if (username == null) {
+            connection.send(ENCRYPTED_MESSAGE_NOT_LOGGED_IN);
+        } else {
+            Session recipient = sessions.find(privateMessageRequestMessage.username());
+            if (recipient != null) {
+                validRecipient = true;
+                //Sends username of the sender and the message to the recipient
+                recipient.connection().send(Frame.of("ENCRYPTED_MESSAGE", new EncryptedPrivateMessage(username, privateMessageRequestMessage.message()), codec));
+            }
+
+            if (validRecipient) {
+                connection.send(ENCRYPTED_MESSAGE_OK);
+            } else {
+                connection.send(ENCRYPTED_MESSAGE_UNKNOWN_RECIPIENT);
+            }
+        }
+    }
+
+    private <T> T read(Payload payload, Class<T> type) throws JsonProcessingException {
+        if (payload.isBinary()) {
+            return BinaryCodec.read(payload.bytes(), payload.offset(), payload.length(), type);
+        }
+        return codec.read(payload.bytes(), payload.offset(), payload.length(), type);
+    }
+}
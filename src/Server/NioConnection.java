@@ -0,0 +1,186 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+//A non-blocking connection owned by a single event loop. Everything except sending lines and close() runs on that loop
+public class NioConnection extends Connection {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final CommandDecoder decoder = new CommandDecoder(READ_BUFFER_SIZE);
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final Runnable enableWrite = this::enableWrite;
+    //Set by NioServer before the connection is registered, the handler is given the finished connection
+    private MessageHandler handler;
+    private SelectionKey key;
+    private boolean closing = false;
+    //The part of a line that didn't fit in the event loop's write buffer, and bytes the socket didn't accept yet
+    private byte[] carryLine;
+    private int carryOffset;
+    private ByteBuffer unwritten;
+
+    public NioConnection(SocketChannel channel, EventLoop eventLoop, Server server) {
+        super(server.getOutboundCapacity(), server.getOverflowPolicy());
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+    }
+
+    void setHandler(MessageHandler handler) {
+        this.handler = handler;
+    }
+
+    void register(Selector selector) {
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            handler.handleWelcome();
+        } catch (ClosedChannelException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    void handleReadable() {
+        try {
+            if (decoder.readFrom(channel) == -1) {
+                handler.handleEndOfStream();
+            }
+            //A line may be spread over multiple reads, the decoder keeps the unfinished part for the next one
+            Command command;
+            while (handler.isConnected() && (command = decoder.next()) != null) {
+                handler.handleCommand(command, decoder.payload());
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println(e.getMessage());
+            handler.disconnect();
+        }
+
+        if (!handler.isConnected()) {
+            closeConnection();
+        }
+    }
+
+    void handleWritable() {
+        try {
+            if (!writeUnwritten()) {
+                return;
+            }
+            //Queued lines are copied into the event loop's buffer, so many small lines go out with one write call
+            ByteBuffer buffer = eventLoop.getWriteBuffer();
+            while (true) {
+                buffer.clear();
+                fill(buffer);
+                buffer.flip();
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    unwritten = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            discardQueued();
+            carryLine = null;
+            unwritten = null;
+            if (closing) {
+                closeChannel();
+            } else {
+                handler.disconnect();
+                closeConnection();
+            }
+            return;
+        }
+
+        if (closing) {
+            closeChannel();
+        } else {
+            writeScheduled.set(false);
+            if (!outbound.isEmpty() && writeScheduled.compareAndSet(false, true)) {
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    protected void writeScheduled() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            if (eventLoop.inEventLoop()) {
+                enableWrite();
+            } else {
+                eventLoop.execute(enableWrite);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        handler.disconnect();
+        eventLoop.execute(this::closeConnection);
+    }
+
+    private boolean writeUnwritten() throws IOException {
+        if (unwritten != null) {
+            channel.write(unwritten);
+            if (unwritten.hasRemaining()) {
+                return false;
+            }
+            unwritten = null;
+        }
+        return true;
+    }
+
+    private void fill(ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            if (carryLine == null) {
+                Frame frame = poll();
+                if (frame == null) {
+                    return;
+                }
+                carryLine = encode(frame);
+                carryOffset = 0;
+            }
+            int length = Math.min(buffer.remaining(), carryLine.length - carryOffset);
+            buffer.put(carryLine, carryOffset, length);
+            carryOffset += length;
+            if (carryOffset == carryLine.length) {
+                carryLine = null;
+            }
+        }
+    }
+
+    private void closeConnection() {
+        if (closing || key == null) {
+            return;
+        }
+        closing = true;
+        handler.handleDisconnect();
+        if (outbound.isEmpty() && carryLine == null && unwritten == null) {
+            closeChannel();
+        } else {
+            key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void closeChannel() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private void enableWrite() {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package Server;
+
+import Messages.MessageCodec;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class NioServer {
+    private final Server server;
+    private final MessageCodec codec;
+    private final EventLoop[] eventLoops;
+
+    public NioServer(Server server, MessageCodec codec) {
+        this.server = server;
+        this.codec = codec;
+        this.eventLoops = new EventLoop[Runtime.getRuntime().availableProcessors()];
+    }
+
+    public void run() throws IOException {
+        for (int i = 0; i < eventLoops.length; i++) {
+            eventLoops[i] = new EventLoop("event-loop-" + i);
+            eventLoops[i].start();
+        }
+
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress(Server.PORT));
+        int next = 0;
+        while (true) {
+            SocketChannel channel = serverSocketChannel.accept();
+            channel.configureBlocking(false);
+
+            //Connections are spread over the event loops round-robin and stay on the same loop until they are closed
+            EventLoop eventLoop = eventLoops[next];
+            next = (next + 1) % eventLoops.length;
+            NioConnection connection = new NioConnection(channel, eventLoop, server);
+            connection.setHandler(new MessageHandler(connection, codec, new PingInfo(), server));
+            eventLoop.register(connection);
+        }
+    }
+}
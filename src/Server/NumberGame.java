@@ -1,133 +1,254 @@
 package Server;
 
+import Messages.MessageCodec;
+import Messages.NumberGameMessage;
 import Messages.NumberResult;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
-import java.io.PrintWriter;
-import java.time.Duration;
-import java.time.Instant;
 import java.util.*;
-
-import static Messages.MessageSender.sendLine;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+
+//One guessing game, from its setup until its results. The game starts when the join time is over and ends when every
+//participant guessed the number or the game time is over
+//
+//The participants' handlers and the timers change the game at the same time without a lock. The game's state only
+//changes with a compare-and-set, so REQUESTED becomes RUNNING or OVER exactly once, and exactly one change ends the
+//game and sends the results. Setting the game up under a free id in NumberGames is the step from IDLE to REQUESTED.
+//The timers are short and never wait, they run on the shared scheduler thread instead of a thread of their own
+//
+//Every participant has its own state, found by username, so a guess costs the same in a game of thousands. The
+//leaderboard is filled in by rank as the participants guess the number, so the results are ready when the game ends.
+//They are then added to the ResultLog, for the leaderboard over all games
 public class NumberGame {
-    private final Map<String, PrintWriter> participants = new HashMap<>();
+    private static final Frame NUMBER_START = Frame.of("NUMBER_START");
+    private static final Frame NUMBER_CANCEL = Frame.of("NUMBER_CANCEL");
+    //Answers to a guess, the result of the comparison is -1, 0 or 1, errors are the error code
+    public static final int TOO_LOW = -1;
+    public static final int CORRECT = 0;
+    public static final int TOO_HIGH = 1;
+    private final String id;
+    private final Map<String, Participant> participants = new ConcurrentHashMap<>();
+    private final AtomicReference<NumberGameState> state = new AtomicReference<>(NumberGameState.REQUESTED);
     private final Random random = new Random();
-    private final List<NumberGameResult> results = new ArrayList<>();
-    private final ObjectMapper mapper = new ObjectMapper();
     private final boolean testing = true;
-    private NumberGameState state = NumberGameState.IDLE;
+    private final TaskExecutor taskExecutor;
+    private final MessageCodec codec;
+    private final ResultLog resultLog;
+    private final long joinMs;
+    private final long durationMs;
+    //Called with the game once it is over, so it can be set up again
+    private final Consumer<NumberGame> onEnd;
+    //Set while STARTING, the RUNNING state publishes them
+    private List<Participant> players;
+    private AtomicReferenceArray<NumberGameResult> leaderboard;
     private int number;
-    private Timer timer = new Timer();
-    private Instant start;
-
-    public boolean isIdle() {
-        return state.equals(NumberGameState.IDLE);
-    }
-
-    public boolean isRequested() {
-        return state.equals(NumberGameState.REQUESTED);
+    private long startNanos;
+    //The number of participants that guessed the number in the high half, the ms of the last of them in the low half,
+    //so the ranks and the times go up together
+    private final AtomicLong finishes = new AtomicLong();
+    //The number of results in the leaderboard
+    private final AtomicInteger ranked = new AtomicInteger();
+    private volatile ScheduledFuture<?> endTimer;
+
+    //The id is null for the game NUMBER_* messages without an id are about
+    public NumberGame(String id, String username, Connection connection, TaskExecutor taskExecutor, MessageCodec codec,
+                      ResultLog resultLog, long joinMs, long durationMs, Consumer<NumberGame> onEnd) {
+        this.id = id;
+        this.taskExecutor = taskExecutor;
+        this.codec = codec;
+        this.resultLog = resultLog;
+        this.joinMs = joinMs;
+        this.durationMs = durationMs;
+        this.onEnd = onEnd;
+        Participant creator = new Participant(username, connection);
+        creator.status.set(Participant.JOINED);
+        participants.put(username, creator);
     }
 
-    public boolean isRunning() {
-        return state.equals(NumberGameState.RUNNING);
+    //Lets users join until the join time is over
+    public void setupGame() {
+        taskExecutor.scheduleInline(this::startGame, joinMs);
     }
 
-    public int getNumber() {
-        return number;
+    public String getId() {
+        return id;
     }
 
-    public void setupGame(String username, PrintWriter writer) {
-        state = NumberGameState.REQUESTED;
-        participants.put(username, writer);
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                startGame();
-            }
-        }, 10000);
+    //Returns 0 when the user joined, or the error code
+    public int joinGame(String username, Connection connection) {
+        NumberGameState current = state.get();
+        if (current != NumberGameState.REQUESTED) {
+            return current == NumberGameState.OVER ? 6002 : 6001;
+        }
+        Participant participant = new Participant(username, connection);
+        if (participants.putIfAbsent(username, participant) != null) {
+            return 6003;
+        }
+        //The start either sees the participant joined, or turns it away before it could join
+        current = state.get();
+        if (current == NumberGameState.REQUESTED && participant.status.compareAndSet(Participant.PENDING, Participant.JOINED)) {
+            return 0;
+        }
+        participant.status.set(Participant.REJECTED);
+        participants.remove(username, participant);
+        return current == NumberGameState.OVER ? 6002 : 6001;
     }
 
-    public boolean userHasJoined(String username) {
-        return participants.containsKey(username);
+    //Returns TOO_LOW, CORRECT or TOO_HIGH, or the error code
+    public int guess(String username, int guess) {
+        if (state.get() != NumberGameState.RUNNING) {
+            return 6002;
+        }
+        Participant participant = participants.get(username);
+        int status = participant == null ? Participant.REJECTED : participant.status.get();
+        if (status == Participant.FINISHED) {
+            return 6006;
+        } else if (status != Participant.JOINED) {
+            return 6004;
+        }
+        participant.guesses.incrementAndGet();
+        if (guess < number) {
+            return TOO_LOW;
+        } else if (guess > number) {
+            return TOO_HIGH;
+        } else if (!participant.status.compareAndSet(Participant.JOINED, Participant.FINISHED)) {
+            //A second guess of the same user got there first
+            return 6006;
+        }
+        finish(participant);
+        return CORRECT;
     }
 
-    public void joinGame(String username, PrintWriter writer) {
-        assert !participants.containsKey(username);
-        participants.put(username, writer);
+    private void finish(Participant participant) {
+        int elapsedMs = (int) ((System.nanoTime() - startNanos) / 1000000);
+        long previous;
+        long next;
+        do {
+            previous = finishes.get();
+            int ms = Math.max(elapsedMs, (int) previous);
+            next = ((previous >>> 32) + 1) << 32 | ms;
+        } while (!finishes.compareAndSet(previous, next));
+        participant.rank = (int) (next >>> 32);
+        participant.ms = (int) next;
+        leaderboard.set(participant.rank - 1, new NumberGameResult(participant.username, participant.ms));
+        //The participant that completes the leaderboard ends the game
+        if (ranked.incrementAndGet() == players.size() && state.compareAndSet(NumberGameState.RUNNING, NumberGameState.OVER)) {
+            sendResults();
+        }
     }
 
-    public void startGame() {
-        if (participants.size() > 1) {
-            state = NumberGameState.RUNNING;
-            if (testing) {
-                //When testing, the number should be set to a known value, so the guessing can be tested.
-                number = 20;
-            } else {
-                //This method will generate a random number from 0 to 49. Afterward 1 is added, so we end up with a random number between 1 and 50
-                number = random.nextInt(50) + 1;
+    private void startGame() {
+        if (!state.compareAndSet(NumberGameState.REQUESTED, NumberGameState.STARTING)) {
+            return;
+        }
+        List<Participant> joined = new ArrayList<>();
+        for (Participant participant : participants.values()) {
+            //A participant still joining is turned away, unless its join goes through first
+            participant.status.compareAndSet(Participant.PENDING, Participant.REJECTED);
+            if (participant.status.get() == Participant.JOINED) {
+                joined.add(participant);
             }
+        }
+        players = joined;
 
-            for (PrintWriter writer : participants.values()) {
-                sendLine("NUMBER_START", writer);
+        if (joined.size() < 2) {
+            state.set(NumberGameState.OVER);
+            Frame numberCancel = gameFrame("NUMBER_CANCEL", NUMBER_CANCEL);
+            for (Participant participant : joined) {
+                participant.connection.sendWithoutBlocking(numberCancel);
             }
-            start = Instant.now();
-            timer.schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    endGame();
-                }
-            }, 2 * 60 * 1000);
+            onEnd.accept(this);
+            return;
+        }
+
+        if (testing) {
+            //When testing, the number should be set to a known value, so the guessing can be tested.
+            number = 20;
         } else {
-            state = NumberGameState.IDLE;
-            for (PrintWriter writer : participants.values()) {
-                sendLine("NUMBER_CANCEL", writer);
-            }
+            //This method will generate a random number from 0 to 49. Afterward 1 is added, so we end up with a random number between 1 and 50
+            number = random.nextInt(50) + 1;
         }
+        leaderboard = new AtomicReferenceArray<>(joined.size());
+        startNanos = System.nanoTime();
+        state.set(NumberGameState.RUNNING);
+        Frame numberStart = gameFrame("NUMBER_START", NUMBER_START);
+        for (Participant participant : joined) {
+            participant.connection.sendWithoutBlocking(numberStart);
+        }
+        endTimer = taskExecutor.scheduleInline(this::endGame, durationMs);
     }
 
-    public boolean userHasGuessedNumber(String username) {
-        for (NumberGameResult result : results) {
-            if (result.username().equals(username)) {
-                return true;
-            }
+    //Called when the game time is over, unless every participant guessed the number before that
+    private void endGame() {
+        if (state.compareAndSet(NumberGameState.RUNNING, NumberGameState.OVER)) {
+            sendResults();
         }
-        return false;
     }
 
-    public void addResult(String username) {
-        Instant stop = Instant.now();
-        NumberGameResult result = new NumberGameResult(username, (int) Duration.between(start, stop).toMillis());
-        results.add(result);
-        if (results.size() == participants.size()) {
-            endGame();
+    //Called by the one change that ended the game. The leaderboard is in order of rank, up to the first participant
+    //that didn't guess the number, or is still putting its result in
+    private void sendResults() {
+        ScheduledFuture<?> timer = endTimer;
+        if (timer != null) {
+            timer.cancel(false);
+        }
+        try {
+            List<NumberGameResult> results = new ArrayList<>(ranked.get());
+            for (int rank = 0; rank < leaderboard.length() && leaderboard.get(rank) != null; rank++) {
+                results.add(leaderboard.get(rank));
+            }
+            Frame numberResult = Frame.of("NUMBER_RESULT", new NumberResult(results, id), codec);
+            for (Participant participant : players) {
+                participant.connection.sendWithoutBlocking(numberResult);
+            }
+            resultLog.append(id, results);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        } finally {
+            onEnd.accept(this);
         }
     }
 
-    //This method can be called when the timer runs out or when every participant has guessed the number
-    //
-    //In order to prevent this method being called again by the timer after the latter condition triggers,
-    //this method cancels the current timer and creates a new one
-    public void endGame() {
+    //The frame of a game with an id names it
+    private Frame gameFrame(String command, Frame withoutId) {
+        if (id == null) {
+            return withoutId;
+        }
         try {
-            NumberResult numberResult = new NumberResult(results);
-            for (PrintWriter writer : participants.values()) {
-                sendLine("NUMBER_RESULT " + mapper.writeValueAsString(numberResult), writer);
-            }
-            participants.clear();
-            results.clear();
-            timer.cancel();
-            timer = new Timer();
-            state = NumberGameState.IDLE;
+            return Frame.of(command, new NumberGameMessage(id), codec);
         } catch (JsonProcessingException e) {
             throw new RuntimeException(e);
         }
     }
 
     private enum NumberGameState {
-        IDLE,
         REQUESTED,
-        RUNNING
+        //Joins are turned away, the participants are being counted
+        STARTING,
+        RUNNING,
+        OVER
+    }
+
+    private static class Participant {
+        //Joining until the join went through or the start turned it away, FINISHED once it guessed the number
+        static final int PENDING = 0;
+        static final int JOINED = 1;
+        static final int REJECTED = 2;
+        static final int FINISHED = 3;
+        final String username;
+        final Connection connection;
+        final AtomicInteger status = new AtomicInteger(PENDING);
+        final AtomicInteger guesses = new AtomicInteger();
+        //Set once it guessed the number
+        volatile int rank;
+        volatile int ms;
+
+        Participant(String username, Connection connection) {
+            this.username = username;
+            this.connection = connection;
+        }
     }
 }
@@ -0,0 +1,78 @@
+package Server;
+
+import Messages.MessageCodec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+//The guessing games that are going on, by id. Every game has its own participants, state and timers, so any number of
+//them can run at once. A game is set up under an id the user picks and is removed once it is over, after which the id
+//can be used again. NUMBER_* messages without an id are about the game without an id, the only game the server could
+//run before games had ids
+public class NumberGames {
+    private static final int MAX_ID_LENGTH = 64;
+    //The key of the game without an id
+    private static final String DEFAULT_GAME = "";
+    private final Map<String, NumberGame> games = new ConcurrentHashMap<>();
+    private final TaskExecutor taskExecutor;
+    private final MessageCodec codec;
+    private final ResultLog resultLog;
+    private final long joinMs;
+    private final long durationMs;
+
+    //Users can join for joinMs after the setup, after that the game runs for at most durationMs
+    public NumberGames(TaskExecutor taskExecutor, MessageCodec codec, ResultLog resultLog, long joinMs, long durationMs) {
+        this.taskExecutor = taskExecutor;
+        this.codec = codec;
+        this.resultLog = resultLog;
+        this.joinMs = joinMs;
+        this.durationMs = durationMs;
+    }
+
+    //Returns 0 when the game was set up, or the error code
+    public int setup(String id, String username, Connection connection) {
+        if (!isValid(id)) {
+            return 6007;
+        }
+        String key = key(id);
+        NumberGame game = new NumberGame(id, username, connection, taskExecutor, codec, resultLog, joinMs, durationMs,
+                //Only this game, a game that ends late mustn't remove a newer one set up under the same id
+                ended -> games.remove(key, ended));
+        if (games.putIfAbsent(key, game) != null) {
+            //The game without an id answered 2000 before games had ids
+            return id == null ? 2000 : 6000;
+        }
+        game.setupGame();
+        return 0;
+    }
+
+    //Returns 0 when the user joined, or the error code
+    public int join(String id, String username, Connection connection) {
+        if (!isValid(id)) {
+            return 6007;
+        }
+        NumberGame game = games.get(key(id));
+        return game == null ? 6002 : game.joinGame(username, connection);
+    }
+
+    //Returns NumberGame.TOO_LOW, CORRECT or TOO_HIGH, or the error code
+    public int guess(String id, String username, int guess) {
+        if (!isValid(id)) {
+            return 6007;
+        }
+        NumberGame game = games.get(key(id));
+        return game == null ? 6002 : game.guess(username, guess);
+    }
+
+    public int size() {
+        return games.size();
+    }
+
+    private static String key(String id) {
+        return id == null ? DEFAULT_GAME : id;
+    }
+
+    private static boolean isValid(String id) {
+        return id == null || (!id.isBlank() && id.length() <= MAX_ID_LENGTH);
+    }
+}
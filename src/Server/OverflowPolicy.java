@@ -0,0 +1,12 @@
+package Server;
+
+//What happens when a message is sent to a connection whose outbound queue is full
+public enum OverflowPolicy {
+    //The message is dropped for this connection only
+    DROP,
+    //The connection is told it can't keep up with a DSCN message and is closed
+    DISCONNECT,
+    //The sender waits for room in the queue, and disconnects the connection if it stays full for too long. Senders on
+    //an NIO event loop never wait, for them this is DISCONNECT
+    BLOCK
+}
@@ -0,0 +1,38 @@
+package Server;
+
+//The part of a line after the command token. It points into the decoder's buffer, so it is only valid until the
+//decoder reads the next line
+public final class Payload {
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private boolean binary;
+
+    void set(byte[] bytes, int offset, int length, boolean binary) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+        this.binary = binary;
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    //Whether the payload is the body of a binary frame instead of JSON
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+}
@@ -1,8 +1,8 @@
 package Server;
 
 public class PingInfo {
-    private boolean awaitingPing = false;
-    private boolean connected = true;
+    private volatile boolean awaitingPing = false;
+    private volatile boolean connected = true;
 
     public void startPing() {
         awaitingPing = true;
@@ -0,0 +1,195 @@
+package Server;
+
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Limits the bandwidth of the file relay, so transfers can't take all of the uplink the chat shares with them. There is
+//a token bucket for all transfers together and one for every user, a relay connection waits for both before it writes
+//what it read. A rate of 0 turns a bucket off, without either the relay isn't held back at all
+//
+//Tokens are reserved before they are there and the connection sleeps off the debt, so every reservation waits for
+//the ones made before it. The relay reads at most a quantum per reservation, which makes the connections sharing a
+//bucket take turns and get an equal share of its rate. A bucket holds at most what its rate sends in the chat's
+//latency budget, so the relay never gets further ahead of its rate than that and queues at most that much in front of
+//the chat on a link the rates fit
+//
+//A user has at most maxRegistrations transfers registered at a time, and a registration only lasts as long as a
+//transfer may wait for its second side. Transfers beyond that are billed as unregistered, like streams beyond MAX_STREAMS
+public class RelayScheduler {
+    //Transfers announced through FILE_TRANSFER_REQ are billed to their sender, other relay connections share a bucket
+    public static final String UNREGISTERED = "unregistered";
+    //Streams beyond this number are billed as unregistered, so a request can't make the server derive any number of ids
+    private static final int MAX_STREAMS = 64;
+    private static final int MIN_QUANTUM = 16 * 1024;
+    private final long globalRate;
+    private final long userRate;
+    private final long latencyBudgetMs;
+    private final int maxRegistrations;
+    private final long registrationNanos;
+    private final TokenBucket globalBucket;
+    private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    //The registration of every announced relay connection, by the id it connects with
+    private final Map<String, Registration> users = new ConcurrentHashMap<>();
+    //The registrations of every user, the oldest first. Changed under the lock of the scheduler, expired ones are
+    //removed when the user registers again or logs out
+    private final Map<String, Deque<Registration>> registrations = new HashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder throttledNanos = new LongAdder();
+
+    //Rates in bytes per second
+    public RelayScheduler(long globalRate, long userRate, long latencyBudgetMs, int maxRegistrations, long registrationTimeoutMs) {
+        this.globalRate = globalRate;
+        this.userRate = userRate;
+        this.latencyBudgetMs = latencyBudgetMs;
+        this.maxRegistrations = maxRegistrations;
+        this.registrationNanos = registrationTimeoutMs * 1000000;
+        this.globalBucket = globalRate > 0 ? new TokenBucket(globalRate, burst(globalRate)) : null;
+    }
+
+    //Registers the ids the streams of a transfer connect with, the first is the id of the transfer and the others are
+    //derived from it the way the clients' ChunkedTransfer.streamId derives them. Ids that are taken keep their sender
+    //until their registration expires
+    public synchronized void register(String id, int streams, String username) {
+        long now = System.nanoTime();
+        Deque<Registration> registered = registrations.computeIfAbsent(username, key -> new ArrayDeque<>());
+        while (!registered.isEmpty() && registered.peekFirst().expired(now)) {
+            remove(registered.pollFirst());
+        }
+        if (registered.size() >= maxRegistrations) {
+            return;
+        }
+        Registration registration = new Registration(username, now + registrationNanos, new ArrayList<>());
+        add(id, registration, now);
+        for (int stream = 1; stream < Math.min(streams, MAX_STREAMS); stream++) {
+            add(UUID.nameUUIDFromBytes((id + "/" + stream).getBytes(StandardCharsets.UTF_8)).toString(), registration, now);
+        }
+        if (!registration.ids().isEmpty()) {
+            registered.addLast(registration);
+        }
+    }
+
+    //Called when the user logs out, transfers that are running keep the user they were started with
+    public synchronized void forget(String username) {
+        Deque<Registration> registered = registrations.remove(username);
+        if (registered != null) {
+            registered.forEach(this::remove);
+        }
+        userBuckets.remove(username);
+    }
+
+    public String userOf(String id) {
+        Registration registration = users.get(id);
+        return registration == null || registration.expired(System.nanoTime()) ? UNREGISTERED : registration.username();
+    }
+
+    public boolean limited() {
+        return globalRate > 0 || userRate > 0;
+    }
+
+    //The most bytes the relay reads before it reserves them, a buffer's worth when nothing is limited
+    public int quantum(int bufferSize) {
+        long quantum = Long.MAX_VALUE;
+        if (globalRate > 0) {
+            quantum = burst(globalRate);
+        }
+        if (userRate > 0) {
+            quantum = Math.min(quantum, burst(userRate));
+        }
+        return (int) Math.max(MIN_QUANTUM, Math.min(quantum, bufferSize));
+    }
+
+    //Waits until the user may send the bytes
+    public void throttle(String user, int bytes) throws InterruptedIOException {
+        if (!limited()) {
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = 0;
+        if (globalBucket != null) {
+            wait = globalBucket.reserve(bytes, now);
+        }
+        if (userRate > 0) {
+            wait = Math.max(wait, userBuckets.computeIfAbsent(user, key -> new TokenBucket(userRate, burst(userRate))).reserve(bytes, now));
+        }
+        if (wait <= 0) {
+            return;
+        }
+        waiting.incrementAndGet();
+        throttledNanos.add(wait);
+        try {
+            Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttled");
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    //The relay connections that are sleeping off their reservation right now
+    public int queueDepth() {
+        return waiting.get();
+    }
+
+    public String report() {
+        return "relay scheduler: " + (globalRate > 0 ? megabytes(globalRate) + "/s" : "unlimited") + " in total, "
+                + (userRate > 0 ? megabytes(userRate) + "/s" : "unlimited") + " per user, "
+                + String.format("%.1f s", throttledNanos.sum() / 1e9) + " spent throttled";
+    }
+
+    private void add(String id, Registration registration, long now) {
+        if (users.merge(id, registration, (taken, added) -> taken.expired(now) ? added : taken) == registration) {
+            registration.ids().add(id);
+        }
+    }
+
+    private void remove(Registration registration) {
+        for (String id : registration.ids()) {
+            users.remove(id, registration);
+        }
+    }
+
+    private long burst(long rate) {
+        return Math.max(MIN_QUANTUM, rate * latencyBudgetMs / 1000);
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+
+    //The ids are the ones the registration got, not the ones that were taken
+    private record Registration(String username, long expiresAt, List<String> ids) {
+        boolean expired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+    //Holds at most burst tokens, and can go into debt: the time until the debt is paid off is what a reservation waits
+    private static final class TokenBucket {
+        private final long rate;
+        private final long burst;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(long rate, long burst) {
+            this.rate = rate;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        //Returns the nanoseconds to wait before the bytes may be sent
+        synchronized long reserve(int bytes, long now) {
+            //Reservations can reach the lock in another order than they read the clock
+            if (now > refilledAt) {
+                tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+                refilledAt = now;
+            }
+            tokens -= bytes;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+        }
+    }
+}
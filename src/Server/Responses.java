@@ -0,0 +1,63 @@
+package Server;
+
+import Messages.*;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+//Responses that never change, encoded once when the server starts: Server.run calls load before it accepts connections,
+//so the first client doesn't wait for the codec and the encoding
+interface Responses {
+    MessageCodec CODEC = new MessageCodec(new ObjectMapper());
+    Frame WELCOME = frame("WELCOME", new WelcomeMessage("Welcome to the java server"));
+    Frame UNKNOWN_COMMAND = Frame.of("UNKNOWN_COMMAND");
+    Frame PARSE_ERROR = Frame.of("PARSE_ERROR");
+    Frame PONG_ERROR = frame("PONG_ERROR", new CodeMessage(4000));
+    Frame DSCN_TIMED_OUT = frame("DSCN", new CodeMessage(3000));
+    Frame DSCN_TOO_MANY_MESSAGES = frame("DSCN", new CodeMessage(3002));
+    //Every frame queued after this one is written in the binary protocol
+    Frame BINARY_OK = ok("BINARY_RESP");
+    Frame LOGIN_OK = ok("LOGIN_RESP");
+    Frame LOGIN_INVALID_USERNAME = error("LOGIN_RESP", 1001);
+    Frame BYE_OK = ok("BYE_RESP");
+    Frame BROADCAST_OK = ok("BROADCAST_RESP");
+    Frame BROADCAST_NOT_LOGGED_IN = error("BROADCAST_RESP", 2000);
+    Frame LIST_USERS_NOT_LOGGED_IN = error("LIST_USERS_RESP", 2000);
+    Frame PRIVATE_MESSAGE_OK = ok("PRIVATE_MESSAGE_RESP");
+    Frame PRIVATE_MESSAGE_NOT_LOGGED_IN = error("PRIVATE_MESSAGE_RESP", 2000);
+    Frame PRIVATE_MESSAGE_UNKNOWN_RECIPIENT = error("PRIVATE_MESSAGE_RESP", 5000);
+    Frame NUMBER_SETUP_OK = ok("NUMBER_SETUP_RESP");
+    Frame NUMBER_JOIN_OK = ok("NUMBER_JOIN_RESP");
+    Frame NUMBER_GUESS_TOO_LOW = frame("NUMBER_GUESS_RESP", new NumberGuessResponseMessage("OK", -1, null));
+    Frame NUMBER_GUESS_CORRECT = frame("NUMBER_GUESS_RESP", new NumberGuessResponseMessage("OK", 0, null));
+    Frame NUMBER_GUESS_TOO_HIGH = frame("NUMBER_GUESS_RESP", new NumberGuessResponseMessage("OK", 1, null));
+    Frame NUMBER_GUESS_INVALID = frame("NUMBER_GUESS_RESP", new NumberGuessResponseMessage("ERROR", 6005, null));
+    Frame LEADERBOARD_NOT_LOGGED_IN = error("LEADERBOARD_RESP", 2000);
+    Frame LEADERBOARD_UNKNOWN_PLAYER = error("LEADERBOARD_RESP", 6008);
+    Frame FILE_TRANSFER_NOT_LOGGED_IN = error("FILE_TRANSFER_RESP", 2000);
+    Frame FILE_TRANSFER_UNKNOWN_RECIPIENT = error("FILE_TRANSFER_RESP", 5000);
+    Frame FILE_TRANSFER_NO_REQUEST = error("FILE_TRANSFER_RESP", 7000);
+    Frame KEY_NOT_LOGGED_IN = error("KEY_RESP", 2000);
+    Frame ENCRYPTED_MESSAGE_OK = ok("ENCRYPTED_MESSAGE_RESP");
+    Frame ENCRYPTED_MESSAGE_NOT_LOGGED_IN = error("ENCRYPTED_MESSAGE_RESP", 2000);
+    Frame ENCRYPTED_MESSAGE_UNKNOWN_RECIPIENT = error("ENCRYPTED_MESSAGE_RESP", 5000);
+
+    //Does nothing, calling it initialises the frames
+    static void load() {
+    }
+
+    private static Frame ok(String command) {
+        return frame(command, new OkResponseMessage("OK"));
+    }
+
+    private static Frame error(String command, int code) {
+        return frame(command, new ErrorResponseMessage("ERROR", code));
+    }
+
+    private static Frame frame(String command, Object message) {
+        try {
+            return Frame.of(command, message, CODEC);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
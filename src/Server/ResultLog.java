@@ -0,0 +1,388 @@
+package Server;
+
+import Messages.LeaderboardEntry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32C;
+
+//Keeps the results of every guessing game that ended, so the leaderboard survives restarts. The games are appended to
+//segment files in a directory, a new segment is started once the current one is segmentSize bytes. Every record is
+//its length, a CRC32C and then the record itself, with varints for the numbers:
+//  GAME:   the time it ended, the game id (empty without one), the number of results and every username with its ms
+//  PLAYER: a username with its best ms, wins and games
+//
+//Compaction folds the segments that are full into one compacted file of PLAYER records, one per player, so the log
+//grows with the players instead of the games. It runs every compactionInterval seconds on the writer thread. The
+//compacted file takes the number of the newest segment it covers, at startup every file it covers is an unfinished
+//compaction's leftover and is deleted, so a compaction that stops halfway loses nothing and counts nothing twice
+//
+//At startup the files are memory-mapped and their records are read from the mapping straight into the leaderboard.
+//The end of the newest segment is cut off after the last whole record, that is where the server stopped while writing
+//
+//The leaderboard is updated right away, the file is written by the writer thread, so the game doesn't wait for the disk
+public class ResultLog {
+    private static final String SEGMENT = ".segment";
+    private static final String COMPACTED = ".compacted";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    private static final byte GAME = 1;
+    private static final byte PLAYER = 2;
+    private final Path directory;
+    private final long segmentSize;
+    private final long compactionInterval;
+    private final Leaderboard leaderboard;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("result-log").daemon().factory());
+    //Only used on the writer thread
+    private FileChannel segment;
+    private long segmentNumber;
+    private long appendedGames = 0;
+    private long compactions = 0;
+
+    //Without a directory the results are only kept in the leaderboard
+    public ResultLog(Path directory, long segmentSize, long compactionInterval, Leaderboard leaderboard) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.compactionInterval = compactionInterval;
+        this.leaderboard = leaderboard;
+    }
+
+    //Reads the log into the leaderboard and opens the newest segment for the games to come
+    public void open() throws IOException {
+        if (directory == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            writer.submit(() -> {
+                recover();
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+        System.out.printf("Read the result log in %d ms, %d players on the leaderboard%n", (System.nanoTime() - start) / 1000000, leaderboard.size());
+        if (compactionInterval > 0) {
+            writer.scheduleWithFixedDelay(this::compactSegments, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+        }
+    }
+
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+
+    //The results in the order the players guessed the number
+    public void append(String id, List<NumberGameResult> results) {
+        leaderboard.record(results);
+        if (directory == null) {
+            return;
+        }
+        long ended = System.currentTimeMillis();
+        writer.execute(() -> {
+            try {
+                write(encodeGame(ended, id, results));
+                appendedGames++;
+            } catch (IOException e) {
+                System.err.println("Couldn't append the results of a game to " + directory + ": " + e.getMessage());
+            }
+        });
+    }
+
+    //Compacts the full segments now and waits for it
+    public void compact() throws IOException {
+        try {
+            writer.submit(() -> {
+                compact(closedFiles());
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        }
+    }
+
+    //Writes what was appended and closes the segment
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    public String report() {
+        return String.format("Result log: %d games appended, %d compactions, %d players on the leaderboard",
+                appendedGames, compactions, leaderboard.size());
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<LogFile> files = files();
+        long compactedNumber = -1;
+        for (LogFile file : files) {
+            if (file.compacted()) {
+                compactedNumber = Math.max(compactedNumber, file.number());
+            }
+        }
+        List<LogFile> live = new ArrayList<>();
+        for (LogFile file : files) {
+            if (file.number() < compactedNumber || (file.number() == compactedNumber && !file.compacted())) {
+                Files.delete(file.path());
+            } else {
+                live.add(file);
+            }
+        }
+        for (int i = 0; i < live.size(); i++) {
+            LogFile file = live.get(i);
+            long valid = read(file.path(), leaderboard);
+            boolean newest = i == live.size() - 1 && !file.compacted();
+            if (valid < Files.size(file.path())) {
+                System.err.println("The result log " + file.path() + " ends in a broken record after " + valid + " bytes"
+                        + (newest ? ", it is cut off there" : ", the rest of it is skipped"));
+                if (newest) {
+                    try (FileChannel channel = FileChannel.open(file.path(), StandardOpenOption.WRITE)) {
+                        channel.truncate(valid);
+                    }
+                }
+            }
+        }
+        LogFile last = live.isEmpty() ? null : live.get(live.size() - 1);
+        if (last != null && !last.compacted()) {
+            openSegment(last.number());
+        } else {
+            openSegment(last == null ? 0 : last.number() + 1);
+        }
+    }
+
+    private void write(ByteBuffer record) throws IOException {
+        if (segment.size() > 0 && segment.size() + record.remaining() > segmentSize) {
+            segment.close();
+            openSegment(segmentNumber + 1);
+        }
+        while (record.hasRemaining()) {
+            segment.write(record);
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segmentNumber = number;
+        segment = FileChannel.open(directory.resolve(name(number, SEGMENT)), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void compactSegments() {
+        try {
+            compact(closedFiles());
+        } catch (IOException e) {
+            System.err.println("Couldn't compact the result log: " + e.getMessage());
+        }
+    }
+
+    //The files before the segment games are appended to
+    private List<LogFile> closedFiles() throws IOException {
+        List<LogFile> closed = new ArrayList<>();
+        for (LogFile file : files()) {
+            if (file.number() < segmentNumber) {
+                closed.add(file);
+            }
+        }
+        return closed;
+    }
+
+    private void compact(List<LogFile> closed) throws IOException {
+        if (closed.isEmpty() || (closed.size() == 1 && closed.get(0).compacted())) {
+            return;
+        }
+        Leaderboard players = new Leaderboard();
+        for (LogFile file : closed) {
+            read(file.path(), players);
+        }
+        long number = closed.get(closed.size() - 1).number();
+        Path compacted = directory.resolve(name(number, COMPACTED));
+        Path temporary = directory.resolve(name(number, COMPACTED) + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (LeaderboardEntry entry : players.players()) {
+                ByteBuffer record = encodePlayer(entry);
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, compacted, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        //From here on the compacted file replaces the files it covers, also when they can't be deleted now
+        for (LogFile file : closed) {
+            if (!file.path().equals(compacted)) {
+                Files.deleteIfExists(file.path());
+            }
+        }
+        compactions++;
+    }
+
+    //The segments and compacted files in the order they were written
+    private List<LogFile> files() throws IOException {
+        List<LogFile> files = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.delete(path);
+                } else if (name.endsWith(SEGMENT) || name.endsWith(COMPACTED)) {
+                    boolean compacted = name.endsWith(COMPACTED);
+                    try {
+                        long number = Long.parseLong(name.substring(0, name.length() - (compacted ? COMPACTED : SEGMENT).length()));
+                        files.add(new LogFile(path, number, compacted));
+                    } catch (NumberFormatException e) {
+                        System.err.println("Skipping " + path + ", it isn't part of the result log");
+                    }
+                }
+            }
+        }
+        //A compacted file comes before the segment with its number, which is deleted at startup
+        files.sort(Comparator.comparingLong(LogFile::number).thenComparing(file -> !file.compacted()));
+        return files;
+    }
+
+    private static String name(long number, String suffix) {
+        return String.format("%020d", number) + suffix;
+    }
+
+    //Adds the records of the file to the leaderboard, returns the length of the whole records it found
+    private static long read(Path path, Leaderboard leaderboard) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        CRC32C crc = new CRC32C();
+        int position = 0;
+        while (buffer.limit() - position >= HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            if (length < 1 || length > MAX_RECORD_LENGTH || length > buffer.limit() - position - HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer record = buffer.slice(position + HEADER_SIZE, length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            try {
+                decode(record, leaderboard);
+            } catch (RuntimeException e) {
+                //A record that passed its checksum but can't be read was written by a newer server
+                System.err.println("Skipping a record of " + path + ": " + e);
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void decode(ByteBuffer record, Leaderboard leaderboard) {
+        byte type = record.get();
+        if (type == GAME) {
+            record.getLong();
+            readString(record);
+            int count = readVarint(record);
+            List<NumberGameResult> results = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                results.add(new NumberGameResult(readString(record), readVarint(record)));
+            }
+            leaderboard.record(results);
+        } else if (type == PLAYER) {
+            leaderboard.merge(new LeaderboardEntry(readString(record), readVarint(record), readVarint(record), readVarint(record)));
+        } else {
+            throw new IllegalArgumentException("Unknown record type " + type);
+        }
+    }
+
+    private static ByteBuffer encodeGame(long ended, String id, List<NumberGameResult> results) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(GAME);
+        output.writeLong(ended);
+        writeString(output, id == null ? "" : id);
+        writeVarint(output, results.size());
+        for (NumberGameResult result : results) {
+            writeString(output, result.username());
+            writeVarint(output, result.ms());
+        }
+        return frame(bytes.toByteArray());
+    }
+
+    private static ByteBuffer encodePlayer(LeaderboardEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeByte(PLAYER);
+        writeString(output, entry.username());
+        writeVarint(output, entry.ms());
+        writeVarint(output, entry.wins());
+        writeVarint(output, entry.games());
+        return frame(bytes.toByteArray());
+    }
+
+    private static ByteBuffer frame(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + record.length);
+        frame.putInt(record.length).putInt((int) crc.getValue()).put(record);
+        return frame.flip();
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer input) {
+        int length = readVarint(input);
+        byte[] bytes = new byte[length];
+        input.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeVarint(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer input) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = input.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private record LogFile(Path path, long number, boolean compacted) {
+    }
+}
@@ -1,63 +1,155 @@
 package Server;
 
+import Messages.MessageCodec;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
 
 public class Server {
-    private final ServerSocket serverSocket;
-    private final ObjectMapper mapper;
-    private final Map<String, PrintWriter> users;
+    public static final int PORT = 1337;
+    private static final long PING_INTERVAL_MS = 10000;
+    private static final long PONG_TIMEOUT_MS = 3000;
+    private static final int READ_BUFFER_SIZE = 8192;
+    //Virtual threads don't need big per-connection buffers to be efficient, keeping them small bounds the heap
+    private static final int VIRTUAL_READ_BUFFER_SIZE = 512;
+    private final ServingMode servingMode;
+    private final MessageCodec codec;
+    private final SessionRegistry sessions;
+    private final int outboundCapacity;
+    private final OverflowPolicy overflowPolicy;
+    private final TaskExecutor taskExecutor;
+    private final ResultLog resultLog;
+    private final NumberGames numberGames;
+    private final HeartbeatScheduler heartbeats;
+    private final RelayScheduler relayScheduler;
+    private final FileRelay fileRelay;
+    private final int relaySocketBufferSize;
+    private final long relayTimeoutMs;
+    private final TransferRendezvous rendezvous;
 
-    public Server() throws IOException {
-        this.serverSocket = new ServerSocket(1337);
-        this.mapper = new ObjectMapper();
-        this.users = new HashMap<>();
+    public Server(ServingMode servingMode) {
+        this.servingMode = servingMode;
+        this.codec = new MessageCodec(new ObjectMapper());
+        this.sessions = new SessionRegistry();
+        this.outboundCapacity = Integer.getInteger("outbound.capacity", 1024);
+        this.overflowPolicy = OverflowPolicy.valueOf(System.getProperty("outbound.overflow", "disconnect").toUpperCase());
+        this.taskExecutor = new TaskExecutor(servingMode == ServingMode.VIRTUAL);
+        String resultsDirectory = System.getProperty("results.dir", "");
+        this.resultLog = new ResultLog(resultsDirectory.isEmpty() ? null : Path.of(resultsDirectory),
+                Long.getLong("results.segment.size", 1024 * 1024), Long.getLong("results.compaction.interval", 600), new Leaderboard());
+        this.numberGames = new NumberGames(taskExecutor, codec, resultLog, Long.getLong("number.join.time", 10000), Long.getLong("number.game.time", 120000));
+        this.heartbeats = new HeartbeatScheduler(PING_INTERVAL_MS, PONG_TIMEOUT_MS);
+        this.relayTimeoutMs = Long.getLong("relay.pending.timeout", 60000);
+        this.relayScheduler = new RelayScheduler(Long.getLong("relay.rate.global", 0), Long.getLong("relay.rate.user", 0),
+                Long.getLong("relay.latency.budget", 20), Integer.getInteger("relay.registrations.max", 16), relayTimeoutMs);
+        this.fileRelay = new FileRelay(Integer.getInteger("relay.buffer.size", 1024 * 1024), relayScheduler);
+        this.relaySocketBufferSize = Integer.getInteger("relay.socket.buffer", 0);
+        this.rendezvous = new TransferRendezvous(taskExecutor, Integer.getInteger("relay.pending.max", 256), relayTimeoutMs);
     }
 
+    //The serving mode can be passed as the first argument, e.g. "nio" or "virtual". Blocking is used when none is given
+    //The size of each connection's outbound queue and what happens when it overflows can be set with the
+    //outbound.capacity and outbound.overflow (drop, disconnect or block) system properties. The file relay's buffer and
+    //its socket buffers can be sized in bytes with relay.buffer.size and relay.socket.buffer. relay.pending.max limits
+    //the transfers waiting for their second side. Waiting for that side, or for the handshake of a new relay
+    //connection, takes at most relay.pending.timeout milliseconds. While files are relayed the bandwidth and the
+    //slowest transfer are printed every relay.stats.interval seconds, 0 turns that off. relay.rate.global and
+    //relay.rate.user cap the relay's bandwidth in bytes per second for all transfers and for the transfers of one user,
+    //0 leaves it unlimited. Capped, the relay gets at most relay.latency.budget milliseconds of its rate ahead, and a user
+    //is billed for at most relay.registrations.max transfers announced in the last relay.pending.timeout. Users can
+    //join a guessing game for number.join.time milliseconds after its setup, it then runs for at most number.game.time.
+    //The results of the games are kept in memory only, unless results.dir names a directory to keep them in. Its
+    //segments are results.segment.size bytes, every results.compaction.interval seconds the full ones are compacted
     public static void main(String[] args) throws IOException {
-        new Server().run();
+        ServingMode servingMode = args.length > 0 ? ServingMode.valueOf(args[0].toUpperCase()) : ServingMode.BLOCKING;
+        new Server(servingMode).run();
     }
 
     public void run() throws IOException {
-        FileTransferSetupThread fileTransferSetupThread = new FileTransferSetupThread();
+        Responses.load();
+        resultLog.open();
+        FileTransferSetupThread fileTransferSetupThread = new FileTransferSetupThread(taskExecutor, fileRelay, rendezvous,
+                relaySocketBufferSize, relayTimeoutMs);
         fileTransferSetupThread.start();
+        int statsInterval = Integer.getInteger("relay.stats.interval", 10);
+        if (statsInterval > 0) {
+            taskExecutor.scheduleAtFixedRate(() -> {
+                String report = fileRelay.intervalReport();
+                if (report != null) {
+                    System.out.println(report);
+                }
+            }, statsInterval * 1000L);
+        }
+        heartbeats.start();
+        System.out.println("Serving in " + servingMode + " mode");
+        FootprintReport.print("startup", taskExecutor);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            FootprintReport.print("shutdown", taskExecutor);
+            System.out.println(heartbeats.report());
+            System.out.println(fileRelay.report());
+            System.out.println(relayScheduler.report());
+            System.out.println(rendezvous.report());
+            resultLog.close();
+            System.out.println(resultLog.report());
+        }));
+        switch (servingMode) {
+            case BLOCKING, VIRTUAL -> runBlocking();
+            case NIO -> new NioServer(this, codec).run();
+        }
+    }
+
+    private void runBlocking() throws IOException {
+        boolean smallBuffers = taskExecutor.usesVirtualThreads();
+        ServerSocket serverSocket = new ServerSocket(PORT);
         while (true) {
             Socket socket = serverSocket.accept();
             InputStream inputStream = socket.getInputStream();
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            OutputStream outputStream = socket.getOutputStream();
-            PrintWriter writer = new PrintWriter(outputStream);
+            CommandDecoder decoder = new CommandDecoder(smallBuffers ? VIRTUAL_READ_BUFFER_SIZE : READ_BUFFER_SIZE);
+            StreamConnection connection = new StreamConnection(socket, outboundCapacity, overflowPolicy);
             PingInfo pingInfo = new PingInfo();
 
-            MessageThread messageThread = new MessageThread(socket, reader, writer, mapper, pingInfo, this);
+            MessageHandler handler = new MessageHandler(connection, codec, pingInfo, this);
+            taskExecutor.execute(connection);
+            taskExecutor.execute(new MessageThread(inputStream, decoder, handler, connection));
+        }
+    }
+
+    public TaskExecutor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    public HeartbeatScheduler getHeartbeats() {
+        return heartbeats;
+    }
 
+    public MessageCodec getCodec() {
+        return codec;
+    }
 
-            messageThread.start();
-        }
+    public NumberGames getNumberGames() {
+        return numberGames;
     }
 
-    public Map<String, PrintWriter> getUsers() {
-        return users;
+    public Leaderboard getLeaderboard() {
+        return resultLog.getLeaderboard();
     }
 
-    public void addUser(String username, PrintWriter writer) {
-        users.put(username.toLowerCase(), writer);
+    public int getOutboundCapacity() {
+        return outboundCapacity;
     }
 
-    public PrintWriter getWriter(String username) {
-        return users.get(username.toLowerCase());
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
     }
 
-    public void removeUser(String username) {
-        users.remove(username.toLowerCase());
+    public SessionRegistry getSessions() {
+        return sessions;
     }
 
-    public boolean containsUser(String username) {
-        return users.containsKey(username.toLowerCase());
+    public RelayScheduler getRelayScheduler() {
+        return relayScheduler;
     }
 }
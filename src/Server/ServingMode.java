@@ -0,0 +1,10 @@
+package Server;
+
+public enum ServingMode {
+    //One reading thread per connection
+    BLOCKING,
+    //A fixed set of selector based event loops, one per core
+    NIO,
+    //One reading virtual thread per connection, every other per-connection task runs on virtual threads as well
+    VIRTUAL
+}
@@ -0,0 +1,10 @@
+package Server;
+
+import java.time.Instant;
+
+//A logged in user. The lookup key is normalised once at login instead of on every lookup
+public record Session(String username, String key, Connection connection, PingInfo pingInfo, Instant loggedInAt) {
+    public Session(String username, Connection connection, PingInfo pingInfo) {
+        this(username, SessionRegistry.normalise(username), connection, pingInfo, Instant.now());
+    }
+}
@@ -0,0 +1,55 @@
+package Server;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+//All logged in users, keyed by their case-insensitive username. Lookups don't lock and iterating is safe while
+//users log in and out, iteration shows each session at most once
+public class SessionRegistry {
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    public static String normalise(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    //Returns false when a user with the same name is already logged in. Two simultaneous logins can't both succeed
+    public boolean register(Session session) {
+        return sessions.putIfAbsent(session.key(), session) == null;
+    }
+
+    //Only removes this exact session, returns whether it was still registered
+    public boolean unregister(Session session) {
+        return sessions.remove(session.key(), session);
+    }
+
+    public Session find(String username) {
+        return sessions.get(normalise(username));
+    }
+
+    public boolean contains(String username) {
+        return sessions.containsKey(normalise(username));
+    }
+
+    public Collection<Session> sessions() {
+        return sessions.values();
+    }
+
+    public Set<String> usernames() {
+        return sessions.keySet();
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    //Sends the same frame to every logged in user except the given session, which may be null
+    public void broadcast(Frame frame, Session except) {
+        for (Session session : sessions.values()) {
+            if (session != except) {
+                session.connection().send(frame);
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package Server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+//A connection over a blocking socket, its queue is drained by a writer task that runs next to the MessageThread
+public class StreamConnection extends Connection implements Runnable {
+    //Queued by close() without reserving room, it is never written
+    private static final Frame CLOSE = Frame.of("CLOSE");
+    private final Socket socket;
+    private final List<Frame> pending = new ArrayList<>();
+    private byte[] writeBuffer = new byte[1024];
+
+    public StreamConnection(Socket socket, int capacity, OverflowPolicy overflowPolicy) {
+        super(capacity, overflowPolicy);
+        this.socket = socket;
+    }
+
+    @Override
+    public void run() {
+        try {
+            OutputStream outputStream = socket.getOutputStream();
+            while (true) {
+                //Everything that was queued while the previous write was going on is written with a single write call
+                pending.add(take());
+                drainTo(pending);
+                int length = 0;
+                boolean closing = false;
+                for (Frame frame : pending) {
+                    if (frame == CLOSE) {
+                        closing = true;
+                        break;
+                    }
+                    length = append(encode(frame), length);
+                }
+                pending.clear();
+
+                outputStream.write(writeBuffer, 0, length);
+                outputStream.flush();
+                if (closing) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    protected void writeScheduled() {
+        //The writer is already waiting on the queue
+    }
+
+    @Override
+    public void close() {
+        outbound.add(CLOSE);
+    }
+
+    @Override
+    protected boolean unreserved(Frame frame) {
+        return frame == CLOSE || super.unreserved(frame);
+    }
+
+    private int append(byte[] line, int length) {
+        if (length + line.length > writeBuffer.length) {
+            byte[] grown = new byte[Math.max(writeBuffer.length * 2, length + line.length)];
+            System.arraycopy(writeBuffer, 0, grown, 0, length);
+            writeBuffer = grown;
+        }
+        System.arraycopy(line, 0, writeBuffer, length, line.length);
+        return length + line.length;
+    }
+}
@@ -0,0 +1,57 @@
+package Server;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Runs every per-connection task of the server, either on platform threads or on virtual threads
+public class TaskExecutor {
+    private final boolean virtualThreads;
+    private final ExecutorService executor;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final AtomicInteger runningTasks = new AtomicInteger();
+
+    public TaskExecutor(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        ThreadFactory threadFactory = virtualThreads
+                ? Thread.ofVirtual().name("task-", 0).factory()
+                : Thread.ofPlatform().name("task-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(threadFactory);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("task-scheduler").daemon().factory());
+        //Cancelled delays are dropped right away instead of holding on to their task until they would have run
+        this.scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    public void execute(Runnable task) {
+        runningTasks.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                runningTasks.decrementAndGet();
+            }
+        });
+    }
+
+    //Waiting for the delay happens on a single shared thread, only the task itself gets a thread of its own
+    public ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return scheduler.schedule(() -> execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //For short tasks that never block: they run on the scheduler thread itself, without a thread of their own
+    public ScheduledFuture<?> scheduleInline(Runnable task, long delayMillis) {
+        return scheduler.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    //Runs the task every period, the first time one period from now
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMillis) {
+        return scheduler.scheduleAtFixedRate(() -> execute(task), periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getRunningTasks() {
+        return runningTasks.get();
+    }
+}
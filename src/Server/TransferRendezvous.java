@@ -0,0 +1,123 @@
+package Server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Pairs the reader and the writer of a file transfer by its id. Whichever side connects first waits in the table,
+//the second one takes it out again. Taking an entry out is atomic, so when both sides connect at the same moment
+//exactly one of them finds the other. Waiting sides are closed when their peer doesn't connect in time, and a side
+//that would make more transfers wait than allowed is closed straight away
+public class TransferRendezvous {
+    private final ConcurrentHashMap<String, Waiting> waiting = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final TaskExecutor taskExecutor;
+    private final int maxPending;
+    private final long timeoutMs;
+    private long pairs = 0;
+    private long totalPairNanos = 0;
+    private long maxPairNanos = 0;
+    private long expirations = 0;
+    private long rejections = 0;
+
+    public TransferRendezvous(TaskExecutor taskExecutor, int maxPending, long timeoutMs) {
+        this.taskExecutor = taskExecutor;
+        this.maxPending = maxPending;
+        this.timeoutMs = timeoutMs;
+    }
+
+    //Returns the channel of the peer when it was already waiting. Returns null when this side waits for its peer now,
+    //or when it was rejected and closed because the table is full or the waiting side can't be its peer
+    public SocketChannel pair(String id, byte role, SocketChannel channel) {
+        Waiting arriving = new Waiting(role, channel, System.nanoTime());
+        while (true) {
+            Waiting current = waiting.get(id);
+            if (current == null) {
+                if (pending.incrementAndGet() > maxPending) {
+                    pending.decrementAndGet();
+                    reject(channel);
+                    return null;
+                }
+                if (waiting.putIfAbsent(id, arriving) == null) {
+                    arriving.expiry = taskExecutor.schedule(() -> expire(id, arriving), timeoutMs);
+                    return null;
+                }
+                //The peer, or a duplicate, got in first
+                pending.decrementAndGet();
+            } else if (!complements(current.role, role)) {
+                reject(channel);
+                return null;
+            } else if (waiting.remove(id, current)) {
+                pending.decrementAndGet();
+                //Without a future yet the expiry finds the entry gone and does nothing
+                Future<?> expiry = current.expiry;
+                if (expiry != null) {
+                    expiry.cancel(false);
+                }
+                recordPair(System.nanoTime() - current.since);
+                return current.channel;
+            }
+        }
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    public synchronized String report() {
+        return "file transfer rendezvous: " + pending.get() + " waiting, " + pairs + " paired, average wait "
+                + (pairs == 0 ? 0 : totalPairNanos / pairs / 1000000) + " ms, longest wait " + maxPairNanos / 1000000
+                + " ms, " + expirations + " expired, " + rejections + " rejected";
+    }
+
+    //A reader pairs with a writer of the same kind of transfer: 'r' with 'w' and 'R' with 'W'
+    private static boolean complements(byte waitingRole, byte role) {
+        return waitingRole != role && Character.isUpperCase(waitingRole) == Character.isUpperCase(role);
+    }
+
+    private void expire(String id, Waiting entry) {
+        if (waiting.remove(id, entry)) {
+            pending.decrementAndGet();
+            synchronized (this) {
+                expirations++;
+            }
+            close(entry.channel);
+        }
+    }
+
+    private void reject(SocketChannel channel) {
+        synchronized (this) {
+            rejections++;
+        }
+        close(channel);
+    }
+
+    private synchronized void recordPair(long nanos) {
+        pairs++;
+        totalPairNanos += nanos;
+        maxPairNanos = Math.max(maxPairNanos, nanos);
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    private static final class Waiting {
+        private final byte role;
+        private final SocketChannel channel;
+        private final long since;
+        private volatile Future<?> expiry;
+
+        Waiting(byte role, SocketChannel channel, long since) {
+            this.role = role;
+            this.channel = channel;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import Messages.BroadcastMessage;
+import Server.Connection;
+import Server.Frame;
+import Server.PingInfo;
+import Server.Server;
+import Server.ServingMode;
+import Server.Session;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+//Measures the bytes allocated by one broadcast to every logged in user, comparing serializing the message
+//for every recipient with encoding a single frame that is shared by all of them
+//Usage: BroadcastBenchmark [users]
+public class BroadcastBenchmark {
+    private static final int ROUNDS = 200;
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws JsonProcessingException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Server server = new Server(ServingMode.BLOCKING);
+        List<DiscardingConnection> connections = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            DiscardingConnection connection = new DiscardingConnection(16);
+            connections.add(connection);
+            server.getSessions().register(new Session("user" + i, connection, new PingInfo()));
+        }
+        BroadcastMessage broadcast = new BroadcastMessage("user0", "Hello everyone, this is a broadcast of a typical length");
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            perRecipient(server, broadcast, connections);
+            sharedFrame(server, broadcast, connections);
+        }
+        report("per recipient serialization", perRecipient(server, broadcast, connections), users);
+        report("shared frame", sharedFrame(server, broadcast, connections), users);
+    }
+
+    //The way broadcasts were sent before: the message is encoded again for every recipient
+    private static long perRecipient(Server server, BroadcastMessage broadcast, List<DiscardingConnection> connections) throws JsonProcessingException {
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            for (Session session : server.getSessions().sessions()) {
+                session.connection().send(Frame.of("BROADCAST", broadcast, server.getCodec()));
+            }
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - before;
+            discardAll(connections);
+        }
+        return allocated / ROUNDS;
+    }
+
+    private static long sharedFrame(Server server, BroadcastMessage broadcast, List<DiscardingConnection> connections) throws JsonProcessingException {
+        long allocated = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            server.getSessions().broadcast(Frame.of("BROADCAST", broadcast, server.getCodec()), null);
+            allocated += THREADS.getCurrentThreadAllocatedBytes() - before;
+            discardAll(connections);
+        }
+        return allocated / ROUNDS;
+    }
+
+    private static void discardAll(List<DiscardingConnection> connections) {
+        for (DiscardingConnection connection : connections) {
+            connection.discard();
+        }
+    }
+
+    private static void report(String name, long bytesPerBroadcast, int users) {
+        System.out.printf("%-28s %,12d bytes per broadcast, %,8.1f bytes per recipient%n", name, bytesPerBroadcast, (double) bytesPerBroadcast / users);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import Client.FileTransferManaging.ChecksumAlgorithm;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+//Measures how fast each checksum algorithm digests a file's bytes, in the 1 MiB buffers the transfers use, against
+//the way the checksum was generated before: MD5 over 1 KB reads and a String.format call per byte of the digest.
+//The data is in memory, so only the hashing is measured and not the disk
+//Usage: ChecksumBenchmark [MB]
+public class ChecksumBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        byte[] data = new byte[megabytes * 1024 * 1024];
+        new Random(42).nextBytes(data);
+
+        MessageDigest md5 = MessageDigest.getInstance("MD5");
+        report("MD5, 1 KB reads", megabytes, () -> {
+            for (int offset = 0; offset < data.length; offset += 1024) {
+                md5.update(data, offset, 1024);
+            }
+            StringBuilder stringBuilder = new StringBuilder();
+            for (byte b : md5.digest()) {
+                stringBuilder.append(String.format("%02x", b & 0xff));
+            }
+            return stringBuilder.length();
+        });
+        for (ChecksumAlgorithm algorithm : ChecksumAlgorithm.values()) {
+            MessageDigest digest = algorithm.newDigest();
+            report(algorithm.getName() + ", 1 MiB reads", megabytes, () -> {
+                for (int offset = 0; offset < data.length; offset += 1024 * 1024) {
+                    digest.update(data, offset, 1024 * 1024);
+                }
+                return digest.digest().length;
+            });
+        }
+    }
+
+    private static void report(String name, int megabytes, Pass pass) {
+        long sink = pass.run();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            sink += pass.run();
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-22s %,8.0f MB/s%s%n", name, (double) megabytes * ROUNDS / (nanos / 1e9), sink == 42 ? " " : "");
+    }
+
+    private interface Pass {
+        long run();
+    }
+}
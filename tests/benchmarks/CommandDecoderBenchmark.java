@@ -0,0 +1,141 @@
+package benchmarks;
+
+import Server.Command;
+import Server.CommandDecoder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Measures how many lines one core can split and identify, comparing readLine() and split() with the CommandDecoder.
+//Every thread decodes its own copy of a mix of client commands, delivered in reads of a fixed size so lines are
+//spread over several reads like they are on a real socket
+//Usage: CommandDecoderBenchmark [threads] [bytes per read]
+public class CommandDecoderBenchmark {
+    private static final int LINES = 100000;
+    private static final int ROUNDS = 20;
+    private static final String[] COMMANDS = {
+            "BROADCAST_REQ {\"message\":\"Hello everyone, this is a broadcast of a typical length\"}",
+            "PRIVATE_MESSAGE_REQ {\"username\":\"someone\",\"message\":\"A private message\"}",
+            "PONG",
+            "NUMBER_GUESS_REQ {\"number\":42}",
+            "LIST_USERS_REQ",
+            "LOGIN {\"username\":\"myname\"}"
+    };
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int readSize = args.length > 1 ? Integer.parseInt(args[1]) : 1460;
+        byte[] input = input();
+
+        run("readLine and split", threads, () -> readLineAndSplit(input, readSize));
+        run("command decoder", threads, () -> commandDecoder(input, readSize));
+    }
+
+    private static byte[] input() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            builder.append(COMMANDS[i % COMMANDS.length]).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    //The way lines were read before, returns a value depending on every line so the work can't be skipped
+    private static long readLineAndSplit(byte[] input, int readSize) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ChunkedInputStream(input, readSize)));
+        long checksum = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] lineParts = line.split(" ", 2);
+            int command = switch (lineParts[0]) {
+                case "BROADCAST_REQ" -> 1;
+                case "PRIVATE_MESSAGE_REQ" -> 2;
+                case "PONG" -> 3;
+                case "NUMBER_GUESS_REQ" -> 4;
+                case "LIST_USERS_REQ" -> 5;
+                case "LOGIN" -> 6;
+                default -> 0;
+            };
+            checksum += command + (lineParts.length > 1 ? lineParts[1].length() : 0);
+        }
+        return checksum;
+    }
+
+    private static long commandDecoder(byte[] input, int readSize) throws IOException {
+        InputStream inputStream = new ChunkedInputStream(input, readSize);
+        CommandDecoder decoder = new CommandDecoder(8192);
+        long checksum = 0;
+        while (true) {
+            Command command = decoder.next();
+            if (command != null) {
+                checksum += command.ordinal() + decoder.payload().length();
+            } else if (decoder.readFrom(inputStream) == -1) {
+                return checksum;
+            }
+        }
+    }
+
+    private static void run(String name, int threads, Decode decode) throws InterruptedException {
+        long[] nanos = new long[threads];
+        long[] allocated = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            workers.add(new Thread(() -> {
+                try {
+                    for (int warmup = 0; warmup < ROUNDS; warmup++) {
+                        decode.run();
+                    }
+                    long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+                    long start = System.nanoTime();
+                    for (int round = 0; round < ROUNDS; round++) {
+                        decode.run();
+                    }
+                    nanos[index] = System.nanoTime() - start;
+                    allocated[index] = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        double linesPerSecond = 0;
+        long totalAllocated = 0;
+        for (int t = 0; t < threads; t++) {
+            linesPerSecond += (double) LINES * ROUNDS / (nanos[t] / 1e9);
+            totalAllocated += allocated[t];
+        }
+        System.out.printf("%-20s %,14.0f lines/s per core, %,8.1f bytes allocated per line (%d threads)%n",
+                name, linesPerSecond / threads, (double) totalAllocated / ((long) LINES * ROUNDS * threads), threads);
+    }
+
+    private interface Decode {
+        long run() throws IOException;
+    }
+
+    //Returns at most readSize bytes per read, like a socket receiving one packet at a time
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        private final int readSize;
+
+        ChunkedInputStream(byte[] bytes, int readSize) {
+            super(bytes);
+            this.readSize = readSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) {
+            return super.read(bytes, offset, Math.min(length, readSize));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import Client.FileTransferManaging.ChecksumAlgorithm;
+import Client.FileTransferManaging.Compression;
+import Client.FileTransferManaging.FileReceiverThread;
+import Client.FileTransferManaging.FileSenderThread;
+import Client.FileTransferManaging.FileTransferManager;
+import Server.FileRelay;
+import Server.FileTransferSetupThread;
+import Server.RelayScheduler;
+import Server.TaskExecutor;
+import Server.TransferRendezvous;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import static Client.FileTransferManaging.ChecksumGenerator.generateChecksum;
+
+//Sends a compressible file, log lines like the server's, and an incompressible one of random bytes through the relay,
+//once as they are and once deflated, and reports the effective throughput: the bytes of the file per second. The
+//clients reach the relay through a LinkProxy with the given bandwidth, 0 sends over loopback without a limit. Starts
+//its own relay on 1338
+//Usage: CompressionBenchmark [file MB] [link MB/s] [one-way delay ms]
+public class CompressionBenchmark {
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 128;
+        long bandwidth = (args.length > 1 ? Long.parseLong(args[1]) : 25) * 1024 * 1024;
+        long delayMs = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        TaskExecutor taskExecutor = new TaskExecutor(false);
+        FileTransferSetupThread relay = new FileTransferSetupThread(taskExecutor, new FileRelay(1024 * 1024, new RelayScheduler(0, 0, 0, 16, 60000)),
+                new TransferRendezvous(taskExecutor, 256, 60000), 0, 60000);
+        relay.setDaemon(true);
+        relay.start();
+        if (bandwidth > 0) {
+            System.setProperty("transfer.port", Integer.toString(LinkProxy.start(delayMs, 16 * 1024 * 1024, bandwidth)));
+        }
+
+        for (boolean compressible : new boolean[]{true, false}) {
+            File source = File.createTempFile("transfer", ".bin");
+            File target = new File(source.getPath() + ".received");
+            source.deleteOnExit();
+            target.deleteOnExit();
+            write(source, (long) megabytes * 1024 * 1024, compressible);
+            String checksum = generateChecksum(source);
+            //The first round warms up the JIT and the page cache
+            for (int round = 0; round < 2; round++) {
+                double plain = send(source, target, checksum, Compression.NONE);
+                double deflated = send(source, target, checksum, Compression.DEFLATE);
+                if (round == 1) {
+                    System.out.printf("%-14s %,d MB: %,8.1f MB/s as it is, %,8.1f MB/s deflated, %.2fx%n",
+                            compressible ? "compressible" : "incompressible", megabytes, megabytes / plain,
+                            megabytes / deflated, plain / deflated);
+                }
+            }
+            source.delete();
+            target.delete();
+        }
+        System.exit(0);
+    }
+
+    //Returns the seconds the transfer took
+    private static double send(File source, File target, String checksum, Compression compression) throws IOException, InterruptedException {
+        target.delete();
+        FileTransferManager manager = new FileTransferManager();
+        String id = UUID.randomUUID().toString();
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.CRC32C;
+        manager.addPendingFileReceiveRequest("sender", id, null, target.getPath(), CHUNK_SIZE, 1, algorithm, compression);
+        manager.addPendingFileSendRequest("receiver", id, source, CHUNK_SIZE, 1, algorithm, compression);
+        long start = System.nanoTime();
+        FileReceiverThread receiver = new FileReceiverThread(manager, "sender");
+        FileSenderThread sender = new FileSenderThread(manager, "receiver");
+        receiver.start();
+        sender.start();
+        receiver.join();
+        sender.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!target.exists() || !generateChecksum(target).equals(checksum)) {
+            throw new IllegalStateException("Transfer with " + compression + " failed");
+        }
+        return seconds;
+    }
+
+    private static void write(File file, long length, boolean compressible) throws IOException {
+        Random random = new Random(42);
+        byte[] block = new byte[1024 * 1024];
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            for (long written = 0; written < length; written += block.length) {
+                if (compressible) {
+                    fillWithLogLines(block, random);
+                } else {
+                    random.nextBytes(block);
+                }
+                output.write(block, 0, (int) Math.min(block.length, length - written));
+            }
+        }
+    }
+
+    private static void fillWithLogLines(byte[] block, Random random) {
+        StringBuilder builder = new StringBuilder(block.length + 200);
+        while (builder.length() < block.length) {
+            builder.append(String.format("2026-10-18 12:%02d:%02d.%03d INFO [worker-%d] user%d sent BROADCAST_REQ, %d bytes in %d ms%n",
+                    random.nextInt(60), random.nextInt(60), random.nextInt(1000), random.nextInt(16),
+                    random.nextInt(500), random.nextInt(10000), random.nextInt(300)));
+        }
+        byte[] lines = builder.toString().getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(lines, 0, block, 0, block.length);
+    }
+}
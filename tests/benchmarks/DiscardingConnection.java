@@ -0,0 +1,30 @@
+package benchmarks;
+
+import Server.Connection;
+import Server.Frame;
+import Server.OverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//A connection without a socket, the benchmarks throw away what was queued for it
+class DiscardingConnection extends Connection {
+    private final List<Frame> discarded = new ArrayList<>();
+
+    DiscardingConnection(int capacity) {
+        super(capacity, OverflowPolicy.DROP);
+    }
+
+    synchronized void discard() {
+        drainTo(discarded);
+        discarded.clear();
+    }
+
+    @Override
+    protected void writeScheduled() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,92 @@
+package benchmarks;
+
+import Client.CryptoEngine;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+
+//Measures on one thread, so per core, how many encrypted private messages a client encrypts and decrypts per second,
+//and how many session keys it unwraps, the way the clients did it before CryptoEngine and with it. Before, every
+//message looked up an AES/ECB Cipher, and every session key a KeyFactory, the private key parsed from PKCS8 and an
+//RSA Cipher. CryptoEngine reuses its Ciphers and the parsed key, and adds a nonce and a tag to every message for GCM
+//Usage: EncryptedMessageBenchmark [messages] [session keys]
+public class EncryptedMessageBenchmark {
+    private static final String MESSAGE = "A private message of a typical length";
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int sessionKeys = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        byte[] publicKey = keyPair.getPublic().getEncoded();
+        byte[] privateKey = keyPair.getPrivate().getEncoded();
+        CryptoEngine crypto = new CryptoEngine(keyPair::getPrivate);
+        SecretKey sessionKey = crypto.newSessionKey();
+        byte[] wrapped = crypto.wrap("bob", publicKey, sessionKey);
+
+        long sink = 0;
+        //The first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                sink += ecbDecrypt(sessionKey, ecbEncrypt(sessionKey, MESSAGE)).length();
+            }
+            double ecb = messages / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                sink += crypto.decrypt(sessionKey, crypto.encrypt(sessionKey, MESSAGE, "alice", "bob"), "alice", "bob").length();
+            }
+            double gcm = messages / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < sessionKeys; i++) {
+                sink += parsingUnwrap(privateKey, wrapped).getEncoded().length;
+            }
+            double parsing = sessionKeys / ((System.nanoTime() - start) / 1e9);
+
+            start = System.nanoTime();
+            for (int i = 0; i < sessionKeys; i++) {
+                sink += crypto.unwrap(wrapped).getEncoded().length;
+            }
+            double cached = sessionKeys / ((System.nanoTime() - start) / 1e9);
+
+            if (round == 1) {
+                System.out.printf("messages encrypted and decrypted: %,10.0f/s new ECB Cipher each, %,10.0f/s cached GCM Cipher, %.2fx%n",
+                        ecb, gcm, gcm / ecb);
+                System.out.printf("session keys unwrapped:           %,10.0f/s key parsed each,  %,10.0f/s parsed key,        %.2fx%n",
+                        parsing, cached, cached / parsing);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    private static byte[] ecbEncrypt(SecretKey sessionKey, String message) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, sessionKey);
+        return cipher.doFinal(message.getBytes());
+    }
+
+    private static String ecbDecrypt(SecretKey sessionKey, byte[] encrypted) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, sessionKey);
+        return new String(cipher.doFinal(encrypted));
+    }
+
+    private static SecretKey parsingUnwrap(byte[] privateKey, byte[] wrapped) throws Exception {
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        PrivateKey ownPrivateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        Cipher cipher = Cipher.getInstance("RSA");
+        cipher.init(Cipher.DECRYPT_MODE, ownPrivateKey);
+        return new SecretKeySpec(cipher.doFinal(wrapped), "AES");
+    }
+}
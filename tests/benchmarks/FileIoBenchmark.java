@@ -0,0 +1,147 @@
+package benchmarks;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+//Sends files of several sizes over loopback and writes them to disk again, comparing the client's former stream
+//based I/O with the channel paths: FileChannel.transferTo on the sending side and a direct buffer or mapped regions on
+//the receiving side. Only the file and socket I/O is measured, without a relay or checksums. For the page cache it
+//reports the page faults of the process and how much of the received file was still dirty, not yet written back,
+//when the transfer ended
+//Usage: FileIoBenchmark [comma separated sizes in MB, 10240 for the 10 GB case]
+public class FileIoBenchmark {
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long REGION_SIZE = 64 * 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "1,16,256,1024";
+        Path directory = Files.createTempDirectory("transfer");
+        Path source = directory.resolve("source.bin");
+        Path target = directory.resolve("target.bin");
+
+        System.out.printf("%8s %-10s %10s %14s %14s %12s%n", "size", "path", "MB/s", "minor faults", "major faults", "dirty MB");
+        for (String size : sizes.split(",")) {
+            long megabytes = Long.parseLong(size.trim());
+            long length = megabytes * 1024 * 1024;
+            createFile(source, length);
+            for (String path : new String[]{"streams", "channels", "mapped"}) {
+                Files.deleteIfExists(target);
+                long[] faultsBefore = pageFaults();
+                long start = System.nanoTime();
+                transfer(path, source, target, length);
+                long nanos = System.nanoTime() - start;
+                long dirty = dirtyKilobytes();
+                long[] faultsAfter = pageFaults();
+                if (Files.size(target) != length) {
+                    throw new IllegalStateException(path + " received " + Files.size(target) + " of " + length + " bytes");
+                }
+                System.out.printf("%6d MB %-10s %,10.0f %,14d %,14d %,12d%n", megabytes, path, megabytes / (nanos / 1e9),
+                        faultsAfter[0] - faultsBefore[0], faultsAfter[1] - faultsBefore[1], dirty / 1024);
+            }
+        }
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(target);
+        Files.deleteIfExists(directory);
+    }
+
+    private static void createFile(Path path, long length) throws IOException {
+        byte[] block = new byte[BUFFER_SIZE];
+        new Random(42).nextBytes(block);
+        try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE)) {
+            for (long written = 0; written < length; written += block.length) {
+                outputStream.write(block, 0, (int) Math.min(block.length, length - written));
+            }
+        }
+    }
+
+    private static void transfer(String path, Path source, Path target, long length) throws Exception {
+        if (path.equals("streams")) {
+            try (ServerSocket server = new ServerSocket(0)) {
+                Thread sender = Thread.ofPlatform().start(() -> {
+                    try (Socket socket = new Socket("127.0.0.1", server.getLocalPort()); InputStream inputStream = new FileInputStream(source.toFile())) {
+                        inputStream.transferTo(socket.getOutputStream());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                try (Socket socket = server.accept(); OutputStream outputStream = new FileOutputStream(target.toFile())) {
+                    socket.getInputStream().transferTo(outputStream);
+                }
+                sender.join();
+            }
+            return;
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open().bind(new InetSocketAddress("127.0.0.1", 0))) {
+            Thread sender = Thread.ofPlatform().start(() -> {
+                try (SocketChannel socket = SocketChannel.open(server.getLocalAddress()); FileChannel file = FileChannel.open(source)) {
+                    for (long position = 0; position < length; ) {
+                        position += file.transferTo(position, length - position, socket);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            try (SocketChannel socket = server.accept();
+                 FileChannel file = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                if (path.equals("channels")) {
+                    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+                    while (socket.read(buffer) != -1) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            file.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                } else {
+                    //The size is written first so the regions can be mapped, like a chunked transfer preallocates
+                    file.write(ByteBuffer.allocate(1), length - 1);
+                    for (long regionStart = 0; regionStart < length; regionStart += REGION_SIZE) {
+                        MappedByteBuffer region = file.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.min(REGION_SIZE, length - regionStart));
+                        while (region.hasRemaining()) {
+                            if (socket.read(region) == -1) {
+                                throw new EOFException();
+                            }
+                        }
+                    }
+                }
+            }
+            sender.join();
+        }
+    }
+
+    //Minor and major page faults of this process so far, from /proc/self/stat on Linux
+    private static long[] pageFaults() throws IOException {
+        Path stat = Path.of("/proc/self/stat");
+        if (!Files.exists(stat)) {
+            return new long[2];
+        }
+        String line = Files.readString(stat);
+        String[] fields = line.substring(line.lastIndexOf(')') + 2).split(" ");
+        return new long[]{Long.parseLong(fields[7]), Long.parseLong(fields[9])};
+    }
+
+    //Dirty page cache of the whole machine, from /proc/meminfo on Linux
+    private static long dirtyKilobytes() throws IOException {
+        Path meminfo = Path.of("/proc/meminfo");
+        if (!Files.exists(meminfo)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(meminfo)) {
+            if (line.startsWith("Dirty:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import Server.HeartbeatScheduler;
+import Server.PingInfo;
+
+//Runs the heartbeat scheduler with many sessions that all answer their PING in time, and reports how long
+//the sweeps of the timer wheel take. Logins are spread over the first interval like they would be on a live server
+//Usage: HeartbeatBenchmark [sessions] [seconds]
+public class HeartbeatBenchmark {
+    private static final long PING_INTERVAL_MS = 1000;
+    private static final long PONG_TIMEOUT_MS = 300;
+
+    public static void main(String[] args) throws InterruptedException {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        DiscardingConnection[] connections = new DiscardingConnection[sessions];
+        PingInfo[] pingInfos = new PingInfo[sessions];
+        for (int i = 0; i < sessions; i++) {
+            connections[i] = new DiscardingConnection(4);
+            pingInfos[i] = new PingInfo();
+        }
+
+        //Answers every PING, so no session is disconnected
+        Thread.ofPlatform().daemon().start(() -> {
+            while (true) {
+                for (int i = 0; i < sessions; i++) {
+                    pingInfos[i].stopPing();
+                    connections[i].discard();
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+
+        HeartbeatScheduler scheduler = new HeartbeatScheduler(PING_INTERVAL_MS, PONG_TIMEOUT_MS);
+        scheduler.start();
+        int perMillisecond = (int) Math.max(1, sessions / PING_INTERVAL_MS);
+        for (int i = 0; i < sessions; i++) {
+            scheduler.start(connections[i], pingInfos[i]);
+            if (i % perMillisecond == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        Thread.sleep(seconds * 1000L);
+        System.out.println(sessions + " sessions, " + seconds + " s: " + scheduler.report());
+    }
+}
@@ -0,0 +1,160 @@
+package benchmarks;
+
+import Messages.LeaderboardEntry;
+import Messages.NumberResult;
+import Server.Leaderboard;
+import Server.NumberGameResult;
+import Server.ResultLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+//Appends the results of many games of four players to a ResultLog in a temporary directory, then measures how long a
+//restart takes to build the leaderboard from the memory-mapped segments, and from the same games as JSON lines read
+//line by line, the way a log of NUMBER_RESULT lines would be read. Then the segments are compacted and read again.
+//Last, it measures the queries LEADERBOARD_REQ answers: the tops of all players and the standing of one player
+//Usage: LeaderboardBenchmark [games] [players]
+public class LeaderboardBenchmark {
+    private static final int RESULTS_PER_GAME = 4;
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final int QUERIES = 1000000;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        int players = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        Path directory = Files.createTempDirectory("results");
+        Path jsonLines = Files.createTempFile("results", ".jsonl");
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(42);
+        try {
+            List<List<NumberGameResult>> played = new ArrayList<>(games);
+            for (int game = 0; game < games; game++) {
+                List<NumberGameResult> results = new ArrayList<>(RESULTS_PER_GAME);
+                int ms = 0;
+                for (int i = 0; i < RESULTS_PER_GAME; i++) {
+                    ms += 500 + random.nextInt(5000);
+                    results.add(new NumberGameResult("player_" + random.nextInt(players), ms));
+                }
+                played.add(results);
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(jsonLines)) {
+                for (int game = 0; game < games; game++) {
+                    writer.write(mapper.writeValueAsString(new NumberResult(played.get(game), "game-" + game)));
+                    writer.newLine();
+                }
+            }
+
+            ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 0, new Leaderboard());
+            log.open();
+            long start = System.nanoTime();
+            for (int game = 0; game < games; game++) {
+                log.append("game-" + game, played.get(game));
+            }
+            //Waits for the writer thread to write every game
+            log.close();
+            double appendSeconds = (System.nanoTime() - start) / 1e9;
+            Leaderboard written = log.getLeaderboard();
+            System.out.printf("%,d games of %d appended in %.2f s, %,.0f games/s, %d segments of %,d bytes, %,d bytes of JSON lines%n",
+                    games, RESULTS_PER_GAME, appendSeconds, games / appendSeconds, count(directory), size(directory), Files.size(jsonLines));
+
+            //The first round warms up the JIT
+            for (int round = 0; round < 2; round++) {
+                start = System.nanoTime();
+                Leaderboard mapped = reopen(directory);
+                double mappedMs = (System.nanoTime() - start) / 1e6;
+
+                start = System.nanoTime();
+                Leaderboard parsed = new Leaderboard();
+                try (BufferedReader reader = Files.newBufferedReader(jsonLines)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        parsed.record(mapper.readValue(line, NumberResult.class).results());
+                    }
+                }
+                double linesMs = (System.nanoTime() - start) / 1e6;
+                if (round == 1) {
+                    System.out.printf("rebuild: %,.0f ms memory-mapped segments, %,.0f ms JSON lines, %.1fx, same leaderboard: %b%n",
+                            mappedMs, linesMs, linesMs / mappedMs, same(written, mapped) && same(written, parsed));
+                }
+            }
+
+            ResultLog compacting = new ResultLog(directory, SEGMENT_SIZE, 0, new Leaderboard());
+            compacting.open();
+            start = System.nanoTime();
+            compacting.compact();
+            double compactMs = (System.nanoTime() - start) / 1e6;
+            compacting.close();
+            start = System.nanoTime();
+            Leaderboard compacted = reopen(directory);
+            double compactedMs = (System.nanoTime() - start) / 1e6;
+            System.out.printf("compacted in %,.0f ms to %d files of %,d bytes, rebuild %,.0f ms, same leaderboard: %b%n",
+                    compactMs, count(directory), size(directory), compactedMs, same(written, compacted));
+
+            long[] tops = new long[QUERIES];
+            long[] lookups = new long[QUERIES];
+            long sink = 0;
+            for (int round = 0; round < 2; round++) {
+                for (int i = 0; i < QUERIES; i++) {
+                    long queryStart = System.nanoTime();
+                    sink += compacted.fastest().size() + compacted.mostWins().size();
+                    tops[i] = System.nanoTime() - queryStart;
+                    String username = "player_" + random.nextInt(players);
+                    queryStart = System.nanoTime();
+                    LeaderboardEntry entry = compacted.player(username);
+                    lookups[i] = System.nanoTime() - queryStart;
+                    sink += entry == null ? 0 : entry.wins();
+                }
+            }
+            Arrays.sort(tops);
+            Arrays.sort(lookups);
+            System.out.printf("queries: tops p50 %,d ns p99 %,d ns, one player p50 %,d ns p99 %,d ns%n",
+                    tops[QUERIES / 2], tops[QUERIES * 99 / 100], lookups[QUERIES / 2], lookups[QUERIES * 99 / 100]);
+            if (sink == 42) {
+                System.out.println();
+            }
+        } finally {
+            Files.deleteIfExists(jsonLines);
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.exit(0);
+    }
+
+    private static Leaderboard reopen(Path directory) throws IOException {
+        ResultLog log = new ResultLog(directory, SEGMENT_SIZE, 0, new Leaderboard());
+        log.open();
+        log.close();
+        return log.getLeaderboard();
+    }
+
+    private static boolean same(Leaderboard expected, Leaderboard actual) {
+        return expected.fastest().equals(actual.fastest()) && expected.mostWins().equals(actual.mostWins())
+                && new HashSet<>(expected.players()).equals(new HashSet<>(actual.players()));
+    }
+
+    private static long count(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private static long size(Path directory) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+}
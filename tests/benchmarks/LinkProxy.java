@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+//A proxy in front of the relay on 1338 that behaves like a slower link. Every segment is delivered the delay after it
+//was read, and each connection can only have a window's worth of bytes in flight, the way a TCP window limits one
+//stream on a link with a high bandwidth-delay product. With a bandwidth, every direction of a connection is also
+//paced to that many bytes per second
+public class LinkProxy {
+    private static final int SEGMENT_SIZE = 16 * 1024;
+
+    //Returns the port the proxy listens on, 0 bytes per second doesn't limit the bandwidth
+    public static int start(long delayMs, int window, long bytesPerSecond) throws IOException {
+        ServerSocket proxy = new ServerSocket(0);
+        Thread.ofPlatform().daemon().start(() -> run(proxy, delayMs, window, bytesPerSecond));
+        return proxy.getLocalPort();
+    }
+
+    private static void run(ServerSocket proxy, long delayMs, int window, long bytesPerSecond) {
+        try {
+            while (true) {
+                Socket client = proxy.accept();
+                Socket relay = new Socket("127.0.0.1", 1338);
+                forward(client, relay, delayMs, window, bytesPerSecond);
+                forward(relay, client, delayMs, window, bytesPerSecond);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //Copies one direction of a connection. A segment leaves when the link is done with the ones before it and arrives
+    //the delay later. Reading stops while a window's worth of bytes is waiting to be delivered. The end of the stream
+    //closes both sockets once delivered
+    private static void forward(Socket from, Socket to, long delayMs, int window, long bytesPerSecond) {
+        LinkedBlockingQueue<Segment> segments = new LinkedBlockingQueue<>();
+        Semaphore inFlight = new Semaphore(window);
+        Thread.ofPlatform().daemon().start(() -> {
+            long linkFreeAt = System.nanoTime();
+            try {
+                InputStream inputStream = from.getInputStream();
+                byte[] buffer = new byte[SEGMENT_SIZE];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    inFlight.acquire(read);
+                    linkFreeAt = Math.max(linkFreeAt, System.nanoTime());
+                    if (bytesPerSecond > 0) {
+                        linkFreeAt += read * 1000000000L / bytesPerSecond;
+                    }
+                    segments.add(new Segment(linkFreeAt + delayMs * 1000000, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException | InterruptedException e) {
+                //The other direction closed the connection
+            }
+            segments.add(new Segment(Math.max(linkFreeAt, System.nanoTime()) + delayMs * 1000000, null));
+        });
+        Thread.ofPlatform().daemon().start(() -> {
+            try {
+                OutputStream outputStream = to.getOutputStream();
+                while (true) {
+                    Segment segment = segments.take();
+                    long wait = segment.deliverAt() - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+                    }
+                    if (segment.bytes() == null) {
+                        break;
+                    }
+                    outputStream.write(segment.bytes());
+                    inFlight.release(segment.bytes().length);
+                }
+            } catch (IOException | InterruptedException e) {
+                //The other direction closed the connection
+            }
+            try {
+                from.close();
+                to.close();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+    }
+
+    private record Segment(long deliverAt, byte[] bytes) {
+    }
+}
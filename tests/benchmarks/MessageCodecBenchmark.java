@@ -0,0 +1,88 @@
+package benchmarks;
+
+import Messages.*;
+import Server.NumberGameResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+//Measures messages per second and bytes allocated per message for every message type, comparing the ObjectMapper
+//calls the handlers used to make with the MessageCodec. Encoding produces the complete line as bytes, decoding
+//starts from the bytes of the payload like the server receives them
+//Usage: MessageCodecBenchmark [messages per round]
+public class MessageCodecBenchmark {
+    private static final int ROUNDS = 10;
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws JsonProcessingException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        ObjectMapper mapper = new ObjectMapper();
+        MessageCodec codec = new MessageCodec(mapper);
+        List<Object> samples = List.of(
+                new BroadcastMessage("someone", "Hello everyone, this is a broadcast of a typical length"),
+                new BroadcastRequestMessage("Hello everyone, this is a broadcast of a typical length"),
+                new CodeMessage(4000),
+                new EncryptedPrivateMessage("someone", new byte[48]),
+                new ErrorResponseMessage("ERROR", 2000),
+                new FileTransferRequestMessage("someone", "file.txt", 1024, "0b6b2a52-5b8e-4a36-9a4a-3cb1f0b6a9f1", "d41d8cd98f00b204e9800998ecf8427e", 1024 * 1024, 1, "CRC32C", "DEFLATE"),
+                new FileTransferResponseMessage("OK", "someone", 1),
+                new GenericMessage("OK", "A message", "someone", 0),
+                new KeyMessage("someone", new byte[294]),
+                new NumberGuess(42, null),
+                new NumberGuessResponseMessage("OK", -1, null),
+                new NumberResult(List.of(new NumberGameResult("someone", 1200), new NumberGameResult("other", 2300)), null),
+                new OkResponseMessage("OK"),
+                new RecipientFileTransferResponseMessage("someone", 1),
+                new UserListMessage(Set.of("someone", "other", "third"), "OK"),
+                new UsernameMessage("someone")
+        );
+
+        System.out.printf("%-44s %14s %10s %14s %10s%n", "", "mapper msg/s", "bytes/op", "codec msg/s", "bytes/op");
+        for (Object sample : samples) {
+            Class<?> type = sample.getClass();
+            byte[] json = mapper.writeValueAsBytes(sample);
+
+            Result mapperEncode = measure(messages, () -> ("COMMAND " + mapper.writeValueAsString(sample) + "\n").getBytes(StandardCharsets.UTF_8).length);
+            Result codecEncode = measure(messages, () -> codec.encodeLine("COMMAND", sample).length);
+            report(type.getSimpleName() + " encode", mapperEncode, codecEncode);
+
+            Result mapperDecode = measure(messages, () -> mapper.readValue(new String(json, StandardCharsets.UTF_8), type).hashCode());
+            Result codecDecode = measure(messages, () -> codec.read(json, 0, json.length, type).hashCode());
+            report(type.getSimpleName() + " decode", mapperDecode, codecDecode);
+        }
+    }
+
+    private static Result measure(int messages, Operation operation) throws JsonProcessingException {
+        long sink = 0;
+        for (int i = 0; i < messages; i++) {
+            sink += operation.run();
+        }
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < messages; i++) {
+                sink += operation.run();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        long operations = (long) messages * ROUNDS;
+        return new Result(operations / (nanos / 1e9), (double) allocated / operations, sink);
+    }
+
+    private static void report(String name, Result mapper, Result codec) {
+        System.out.printf("%-44s %,14.0f %,10.1f %,14.0f %,10.1f%n", name, mapper.perSecond(), mapper.bytesPerOperation(), codec.perSecond(), codec.bytesPerOperation());
+    }
+
+    private interface Operation {
+        long run() throws JsonProcessingException;
+    }
+
+    //The sink is kept so the measured work can't be optimised away
+    private record Result(double perSecond, double bytesPerOperation, long sink) {
+    }
+}
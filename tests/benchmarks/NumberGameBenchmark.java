@@ -0,0 +1,139 @@
+package benchmarks;
+
+import Messages.MessageCodec;
+import Server.Leaderboard;
+import Server.NumberGame;
+import Server.NumberGames;
+import Server.ResultLog;
+import Server.TaskExecutor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+//Sets up thousands of guessing games at once and lets every participant join, then gives every participant a virtual
+//thread that waits for the start and searches for the number by halving the range, like a player would. Reports the
+//setups and joins per second, how long the games took from the first setup until the last result, the guesses per
+//second and the time a guess takes in the engine. Also reports the platform threads the engine started and the heap
+//the games took up, per game. The timers run on a TaskExecutor without virtual threads, like the blocking server's.
+//The results go to a leaderboard in memory, without a directory to write them to
+//Usage: NumberGameBenchmark [games] [participants per game] [join ms]
+//NumberGameBenchmark 1 10000 lets 10,000 participants of one game guess at once
+public class NumberGameBenchmark {
+    private static final long GAME_MS = 60000;
+    private static final long RETRY_MS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int participants = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long joinMs = args.length > 2 ? Long.parseLong(args[2]) : 1000;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        //The first round warms up the JIT
+        for (int round = 0; round < 2; round++) {
+            System.gc();
+            long heapBefore = usedHeap();
+            long threadsBefore = threads.getTotalStartedThreadCount();
+            NumberGames numberGames = new NumberGames(new TaskExecutor(false), new MessageCodec(new ObjectMapper()),
+                    new ResultLog(null, 0, 0, new Leaderboard()), joinMs, GAME_MS);
+            LongAdder guesses = new LongAdder();
+            ConcurrentLinkedQueue<Long> guessNanos = new ConcurrentLinkedQueue<>();
+            AtomicInteger failures = new AtomicInteger();
+            CountDownLatch done = new CountDownLatch(games * participants);
+
+            long start = System.nanoTime();
+            for (int game = 0; game < games; game++) {
+                String id = "game-" + game;
+                for (int participant = 0; participant < participants; participant++) {
+                    String username = id + "-player-" + participant;
+                    DiscardingConnection connection = new DiscardingConnection(16);
+                    int code = participant == 0 ? numberGames.setup(id, username, connection) : numberGames.join(id, username, connection);
+                    if (code != 0) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }
+            double joinSeconds = (System.nanoTime() - start) / 1e9;
+            int running = numberGames.size();
+            System.gc();
+            long heapPerGame = (usedHeap() - heapBefore) / games;
+            for (int game = 0; game < games; game++) {
+                String id = "game-" + game;
+                for (int participant = 0; participant < participants; participant++) {
+                    String username = id + "-player-" + participant;
+                    Thread.ofVirtual().start(() -> {
+                        try {
+                            play(numberGames, id, username, guesses, guessNanos, failures);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                }
+            }
+            done.await();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            //The timer of the last game may still be finishing
+            Thread.sleep(100);
+            double threadsPerGame = (threads.getTotalStartedThreadCount() - threadsBefore) / (double) games;
+
+            if (round == 1) {
+                List<Long> sorted = new ArrayList<>(guessNanos);
+                sorted.sort(null);
+                System.out.printf("%,d games of %d at once, %,.0f setups and joins/s, all over in %.2f s (%d ms to join), %d failures, %d games left%n",
+                        running, participants, games * participants / joinSeconds, seconds, joinMs, failures.get(), numberGames.size());
+                System.out.printf("%,d guesses, %,.0f guesses/s after the start, a guess takes p50 %.1f us p99 %.1f us%n",
+                        guesses.sum(), guesses.sum() / Math.max(seconds - joinMs / 1e3, 1e-3),
+                        sorted.get(sorted.size() / 2) / 1e3, sorted.get(sorted.size() * 99 / 100) / 1e3);
+                System.out.printf("per game: %.2f platform threads started, %,d bytes of heap while joining%n", threadsPerGame, heapPerGame);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void play(NumberGames numberGames, String id, String username, LongAdder guesses,
+                             ConcurrentLinkedQueue<Long> guessNanos, AtomicInteger failures) throws InterruptedException {
+        long giveUpAt = System.nanoTime() + GAME_MS * 1000000;
+        int low = 1;
+        int high = 50;
+        while (true) {
+            int guess = (low + high) / 2;
+            long start = System.nanoTime();
+            int code = numberGames.guess(id, username, guess);
+            long nanos = System.nanoTime() - start;
+            if (code == 6002) {
+                //Not started yet, or cancelled
+                if (System.nanoTime() > giveUpAt) {
+                    failures.incrementAndGet();
+                    return;
+                }
+                Thread.sleep(RETRY_MS);
+                continue;
+            }
+            guessNanos.add(nanos);
+            guesses.increment();
+            if (code == NumberGame.TOO_LOW) {
+                low = guess + 1;
+            } else if (code == NumberGame.TOO_HIGH) {
+                high = guess - 1;
+            } else {
+                if (code != NumberGame.CORRECT) {
+                    failures.incrementAndGet();
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import Client.FileTransferManaging.ChecksumAlgorithm;
+import Client.FileTransferManaging.Compression;
+import Client.FileTransferManaging.FileReceiverThread;
+import Client.FileTransferManaging.FileSenderThread;
+import Client.FileTransferManaging.FileTransferManager;
+import Server.FileRelay;
+import Server.FileTransferSetupThread;
+import Server.RelayScheduler;
+import Server.TaskExecutor;
+import Server.TransferRendezvous;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.UUID;
+
+import static Client.FileTransferManaging.ChecksumGenerator.generateChecksum;
+
+//Sends a file through the relay with 1, 2, 4 and 8 streams and reports the time each took. The clients reach the
+//relay through a proxy that delays every segment and lets each connection have a limited number of bytes in flight,
+//the way a TCP window limits one stream on a link with a high bandwidth-delay product. Starts its own relay on 1338
+//Usage: ParallelTransferBenchmark [file MB] [one-way delay ms] [window KB]
+public class ParallelTransferBenchmark {
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        long delayMs = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        int window = (args.length > 2 ? Integer.parseInt(args[2]) : 256) * 1024;
+
+        TaskExecutor taskExecutor = new TaskExecutor(false);
+        FileTransferSetupThread relay = new FileTransferSetupThread(taskExecutor, new FileRelay(1024 * 1024, new RelayScheduler(0, 0, 0, 16, 60000)),
+                new TransferRendezvous(taskExecutor, 256, 60000), 0, 60000);
+        relay.setDaemon(true);
+        relay.start();
+        System.setProperty("transfer.port", Integer.toString(LinkProxy.start(delayMs, window, 0)));
+
+        File source = File.createTempFile("transfer", ".bin");
+        File target = new File(source.getPath() + ".received");
+        source.deleteOnExit();
+        target.deleteOnExit();
+        byte[] block = new byte[1024 * 1024];
+        new Random(42).nextBytes(block);
+        try (RandomAccessFile file = new RandomAccessFile(source, "rw")) {
+            for (int i = 0; i < megabytes; i++) {
+                block[0] = (byte) i;
+                file.write(block);
+            }
+        }
+        String checksum = generateChecksum(source);
+        ChecksumAlgorithm algorithm = ChecksumAlgorithm.configured();
+
+        double singleStream = 0;
+        for (int streams : new int[]{1, 2, 4, 8}) {
+            target.delete();
+            FileTransferManager manager = new FileTransferManager();
+            String id = UUID.randomUUID().toString();
+            manager.addPendingFileReceiveRequest("sender", id, null, target.getPath(), 1024 * 1024, streams, algorithm, Compression.NONE);
+            manager.addPendingFileSendRequest("receiver", id, source, 1024 * 1024, streams, algorithm, Compression.NONE);
+            long start = System.nanoTime();
+            FileReceiverThread receiver = new FileReceiverThread(manager, "sender");
+            FileSenderThread sender = new FileSenderThread(manager, "receiver");
+            receiver.start();
+            sender.start();
+            receiver.join();
+            sender.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (!target.exists() || !generateChecksum(target).equals(checksum)) {
+                throw new IllegalStateException("Transfer with " + streams + " streams failed");
+            }
+            if (streams == 1) {
+                singleStream = seconds;
+            }
+            System.out.printf("%d streams: %,d MB in %.2f s, %,.1f MB/s, %.1fx%n", streams, megabytes, seconds,
+                    megabytes / seconds, singleStream / seconds);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,85 @@
+package benchmarks;
+
+import Messages.*;
+import Server.NumberGameResult;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+//Compares the text and the binary protocol for typical messages: the bytes each frame takes on the wire, and how many
+//frames per second one core can encode and decode again. The encrypted messages and keys are random bytes of the
+//sizes the client produces (AES blocks, an RSA encrypted session key and an X.509 encoded RSA public key)
+//Usage: ProtocolBenchmark [frames per round]
+public class ProtocolBenchmark {
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws JsonProcessingException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        MessageCodec codec = new MessageCodec(new ObjectMapper());
+        Random random = new Random(42);
+        List<Sample> samples = List.of(
+                new Sample("BROADCAST", new BroadcastMessage("someone", "Hello everyone, this is a broadcast of a typical length")),
+                new Sample("PRIVATE_MESSAGE", new BroadcastMessage("someone", "A private message")),
+                new Sample("ENCRYPTED_MESSAGE", new EncryptedPrivateMessage("someone", bytes(random, 64))),
+                new Sample("SESSION_KEY", new KeyMessage("someone", bytes(random, 256))),
+                new Sample("PUBLIC_KEY", new KeyMessage("someone", bytes(random, 294))),
+                new Sample("LIST_USERS_RESP", new UserListMessage(Set.of("someone", "other", "third", "fourth"), "OK")),
+                new Sample("NUMBER_RESULT", new NumberResult(List.of(new NumberGameResult("someone", 1200), new NumberGameResult("other", 2300)), null)),
+                new Sample("NUMBER_GUESS_RESP", new NumberGuessResponseMessage("OK", -1, null))
+        );
+
+        System.out.printf("%-20s %10s %10s %8s %16s %16s%n", "", "text B", "binary B", "saved", "text frames/s", "binary frames/s");
+        for (Sample sample : samples) {
+            Class<?> type = sample.message().getClass();
+            byte[] text = codec.encodeLine(sample.command(), sample.message());
+            byte[] binary = BinaryCodec.encodeFrame(sample.command(), sample.message());
+            int payloadOffset = sample.command().length() + 1;
+
+            double textPerSecond = measure(frames, () -> {
+                byte[] line = codec.encodeLine(sample.command(), sample.message());
+                return codec.read(line, payloadOffset, line.length - payloadOffset - 1, type).hashCode();
+            });
+            double binaryPerSecond = measure(frames, () -> {
+                byte[] frame = BinaryCodec.encodeFrame(sample.command(), sample.message());
+                int bodyOffset = BinaryCodec.LENGTH_SIZE + 1;
+                return BinaryCodec.read(frame, bodyOffset, frame.length - bodyOffset, type).hashCode();
+            });
+            System.out.printf("%-20s %,10d %,10d %7.0f%% %,16.0f %,16.0f%n", sample.command(), text.length, binary.length,
+                    100.0 * (text.length - binary.length) / text.length, textPerSecond, binaryPerSecond);
+        }
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static double measure(int frames, RoundTrip roundTrip) throws JsonProcessingException {
+        long sink = 0;
+        for (int i = 0; i < frames; i++) {
+            sink += roundTrip.run();
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < frames; i++) {
+                sink += roundTrip.run();
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return (double) frames * ROUNDS / (nanos / 1e9);
+    }
+
+    private interface RoundTrip {
+        long run() throws JsonProcessingException;
+    }
+
+    private record Sample(String command, Object message) {
+    }
+}
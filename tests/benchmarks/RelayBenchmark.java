@@ -0,0 +1,120 @@
+package benchmarks;
+
+import Server.FileRelay;
+import Server.RelayScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//Measures the file relay over loopback: a sender streams the file to the relay, which copies it to a receiver. The
+//stream relay is how FileTransferThread copied before, InputStream.transferTo between the sockets; the channel relay
+//is the FileRelay. Reports throughput and the CPU time the relay thread spent per GB
+//Usage: RelayBenchmark [MB per transfer] [relay buffer size] [socket buffer size, 0 for the OS default]
+public class RelayBenchmark {
+    private static final int ROUNDS = 5;
+    private static final double GB = 1024 * 1024 * 1024;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        long bytes = (args.length > 0 ? Long.parseLong(args[0]) : 1024) * 1024 * 1024;
+        int bufferSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024 * 1024;
+        int socketBufferSize = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+        FileRelay fileRelay = new FileRelay(bufferSize, new RelayScheduler(0, 0, 0, 16, 60000));
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            if (socketBufferSize > 0) {
+                server.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+            }
+            server.bind(new InetSocketAddress("localhost", 0));
+            for (int round = 0; round < ROUNDS; round++) {
+                run("stream relay", server, bytes, socketBufferSize, (source, target) -> {
+                    InputStream input = source.socket().getInputStream();
+                    OutputStream output = target.socket().getOutputStream();
+                    input.transferTo(output);
+                });
+                run("channel relay", server, bytes, socketBufferSize, (source, target) -> fileRelay.relay(source, target, RelayScheduler.UNREGISTERED));
+            }
+        }
+        System.out.println(fileRelay.report());
+    }
+
+    private static void run(String name, ServerSocketChannel server, long bytes, int socketBufferSize, Relay relay) throws Exception {
+        InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        SocketChannel sender = connect(address, socketBufferSize);
+        SocketChannel source = server.accept();
+        SocketChannel receiver = connect(address, socketBufferSize);
+        SocketChannel target = server.accept();
+        if (socketBufferSize > 0) {
+            target.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+        }
+
+        Thread sending = Thread.ofPlatform().start(() -> send(sender, bytes));
+        long[] received = new long[1];
+        Thread receiving = Thread.ofPlatform().start(() -> received[0] = receive(receiver));
+
+        long start = System.nanoTime();
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        relay.run(source, target);
+        long cpu = THREADS.getCurrentThreadCpuTime() - cpuStart;
+        target.close();
+        receiving.join();
+        long nanos = System.nanoTime() - start;
+        sending.join();
+        source.close();
+
+        if (received[0] != bytes) {
+            throw new IllegalStateException(name + " received " + received[0] + " of " + bytes + " bytes");
+        }
+        System.out.printf("%-14s %,8.0f MB/s %8.2f relay CPU s per GB%n", name, bytes / (1024.0 * 1024) / (nanos / 1e9), cpu / 1e9 / (bytes / GB));
+    }
+
+    private static SocketChannel connect(InetSocketAddress address, int socketBufferSize) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        if (socketBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+        }
+        channel.connect(address);
+        return channel;
+    }
+
+    private static void send(SocketChannel channel, long bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        try (channel) {
+            long remaining = bytes;
+            while (remaining > 0) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                remaining -= channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static long receive(SocketChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024);
+        long received = 0;
+        try (channel) {
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                received += read;
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return received;
+    }
+
+    private interface Relay {
+        void run(SocketChannel source, SocketChannel target) throws IOException;
+    }
+}
@@ -0,0 +1,159 @@
+package benchmarks;
+
+import Server.FileRelay;
+import Server.RelayScheduler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Relays six transfers over loopback at once, four of them from one user, without limits, with a global cap and with a
+//global and a per-user cap. Reports every user's bandwidth, how evenly the transfers share it (Jain's index, 1 is
+//perfectly fair) and the round trip time of a small message echoed on another connection meanwhile, which stands in
+//for the chat's latency
+//Usage: RelaySchedulerBenchmark [global MB/s] [per user MB/s] [seconds per scenario]
+public class RelaySchedulerBenchmark {
+    private static final String[] USERS = {"alice", "alice", "alice", "alice", "bob", "carol"};
+    private static final int WARMUP_MS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        long globalRate = (args.length > 0 ? Long.parseLong(args[0]) : 200) * 1024 * 1024;
+        long userRate = (args.length > 1 ? Long.parseLong(args[1]) : 50) * 1024 * 1024;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress("localhost", 0));
+            run("unlimited", new RelayScheduler(0, 0, 20, 16, 60000), server, seconds);
+            run("global cap", new RelayScheduler(globalRate, 0, 20, 16, 60000), server, seconds);
+            run("global and user cap", new RelayScheduler(globalRate, userRate, 20, 16, 60000), server, seconds);
+        }
+    }
+
+    private static void run(String name, RelayScheduler scheduler, ServerSocketChannel server, int seconds) throws Exception {
+        FileRelay fileRelay = new FileRelay(1024 * 1024, scheduler);
+        InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        List<SocketChannel> senders = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        AtomicLong[] received = new AtomicLong[USERS.length];
+        for (int i = 0; i < USERS.length; i++) {
+            SocketChannel sender = SocketChannel.open(address);
+            SocketChannel source = server.accept();
+            SocketChannel receiver = SocketChannel.open(address);
+            SocketChannel target = server.accept();
+            String user = USERS[i];
+            AtomicLong counter = received[i] = new AtomicLong();
+            senders.add(sender);
+            threads.add(Thread.ofPlatform().start(() -> send(sender)));
+            threads.add(Thread.ofPlatform().start(() -> receive(receiver, counter)));
+            threads.add(Thread.ofPlatform().start(() -> {
+                try (source; target) {
+                    fileRelay.relay(source, target, user);
+                } catch (IOException e) {
+                    //The sender was closed while its bytes were on the way
+                }
+            }));
+        }
+        Echo echo = new Echo(server);
+
+        Thread.sleep(WARMUP_MS);
+        long[] before = Arrays.stream(received).mapToLong(AtomicLong::get).toArray();
+        long start = System.nanoTime();
+        List<Long> roundTrips = new ArrayList<>();
+        int maxQueueDepth = 0;
+        while (System.nanoTime() - start < seconds * 1000000000L) {
+            roundTrips.add(echo.roundTrip());
+            maxQueueDepth = Math.max(maxQueueDepth, scheduler.queueDepth());
+            Thread.sleep(10);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        double[] rates = new double[USERS.length];
+        for (int i = 0; i < USERS.length; i++) {
+            rates[i] = (received[i].get() - before[i]) / (1024.0 * 1024) / elapsed;
+        }
+        for (SocketChannel sender : senders) {
+            sender.close();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        echo.close();
+
+        Map<String, Double> perUser = new LinkedHashMap<>();
+        for (int i = 0; i < USERS.length; i++) {
+            perUser.merge(USERS[i], rates[i], Double::sum);
+        }
+        double total = Arrays.stream(rates).sum();
+        double squares = Arrays.stream(rates).map(rate -> rate * rate).sum();
+        roundTrips.sort(null);
+        System.out.printf("%-20s %,8.1f MB/s in total, transfer fairness %.2f, max queue depth %d, chat round trip p50 %.2f ms p99 %.2f ms%n",
+                name, total, total * total / (USERS.length * squares), maxQueueDepth,
+                roundTrips.get(roundTrips.size() / 2) / 1e6, roundTrips.get(roundTrips.size() * 99 / 100) / 1e6);
+        perUser.forEach((user, rate) -> System.out.printf("%20s %-6s %,8.1f MB/s%n", "", user, rate));
+    }
+
+    private static void send(SocketChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try {
+            while (true) {
+                channel.write(buffer.clear());
+            }
+        } catch (IOException e) {
+            //Closed at the end of the scenario
+        }
+    }
+
+    private static void receive(SocketChannel channel, AtomicLong received) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try (channel) {
+            int read;
+            while ((read = channel.read(buffer.clear())) != -1) {
+                received.addAndGet(read);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //A connection that echoes one byte back, timed from the client side
+    private static final class Echo {
+        private final SocketChannel client;
+        private final SocketChannel peer;
+        private final Thread thread;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1);
+
+        Echo(ServerSocketChannel server) throws IOException {
+            client = SocketChannel.open(server.getLocalAddress());
+            peer = server.accept();
+            thread = Thread.ofPlatform().start(() -> {
+                ByteBuffer echoed = ByteBuffer.allocate(1);
+                try (peer) {
+                    while (peer.read(echoed.clear()) != -1) {
+                        peer.write(echoed.flip());
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+
+        long roundTrip() throws IOException {
+            long start = System.nanoTime();
+            client.write(buffer.clear().put((byte) 1).flip());
+            client.read(buffer.clear());
+            return System.nanoTime() - start;
+        }
+
+        void close() throws IOException, InterruptedException {
+            client.close();
+            thread.join();
+        }
+    }
+}
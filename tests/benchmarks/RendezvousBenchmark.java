@@ -0,0 +1,93 @@
+package benchmarks;
+
+import Server.TaskExecutor;
+import Server.TransferRendezvous;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Races the reader and the writer of every transfer into the rendezvous table at the same moment and checks that each
+//transfer is paired exactly once, then connects a burst of transfers whose second side never comes and checks that
+//only the allowed number waits and all of them are closed when they expire
+//Usage: RendezvousBenchmark [transfers per batch] [batches]
+public class RendezvousBenchmark {
+    private static final int MAX_PENDING = 256;
+    private static final long TIMEOUT_MS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int batches = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        TaskExecutor taskExecutor = new TaskExecutor(false);
+        TransferRendezvous rendezvous = new TransferRendezvous(taskExecutor, MAX_PENDING, TIMEOUT_MS);
+
+        long nanos = 0;
+        int paired = 0;
+        for (int batch = 0; batch < batches; batch++) {
+            long start = System.nanoTime();
+            paired += raceBatch(rendezvous, transfers);
+            nanos += System.nanoTime() - start;
+        }
+        int expected = transfers * batches;
+        System.out.printf("%,d of %,d transfers paired, %,.0f pairs/s including starting the threads, %d left waiting%n", paired, expected,
+                paired / (nanos / 1e9), rendezvous.pending());
+
+        List<SocketChannel> abandoned = new ArrayList<>();
+        for (int i = 0; i < MAX_PENDING * 4; i++) {
+            SocketChannel channel = SocketChannel.open();
+            abandoned.add(channel);
+            rendezvous.pair(UUID.randomUUID().toString(), (byte) 'w', channel);
+        }
+        long open = abandoned.stream().filter(SocketChannel::isOpen).count();
+        System.out.println("Abandoned burst of " + abandoned.size() + ": " + rendezvous.pending() + " waiting, " + open + " open");
+        Thread.sleep(TIMEOUT_MS * 2);
+        open = abandoned.stream().filter(SocketChannel::isOpen).count();
+        System.out.println("After the timeout: " + rendezvous.pending() + " waiting, " + open + " open");
+        System.out.println(rendezvous.report());
+        if (paired != expected || open != 0 || rendezvous.pending() != 0) {
+            throw new IllegalStateException("Transfers were lost or left open");
+        }
+        System.exit(0);
+    }
+
+    //Returns how many transfers were paired, every pair of threads starts at the same moment
+    private static int raceBatch(TransferRendezvous rendezvous, int transfers) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger paired = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < transfers; i++) {
+            String id = UUID.randomUUID().toString();
+            for (byte role : new byte[]{'r', 'w'}) {
+                SocketChannel channel = SocketChannel.open();
+                channels.add(channel);
+                threads.add(Thread.ofVirtual().start(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    if (rendezvous.pair(id, role, channel) != null) {
+                        paired.incrementAndGet();
+                    }
+                }));
+            }
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (SocketChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return paired.get();
+    }
+}
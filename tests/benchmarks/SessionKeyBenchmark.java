@@ -0,0 +1,79 @@
+package benchmarks;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+
+//Measures the client side work of an encrypted private message with and without a cached session key. Without one,
+//the message waits for the key exchange the clients do through PUBLIC_KEY and SESSION_KEY: the peer decodes the RSA
+//public key, generates an AES key and wraps it, the sender decodes its private key and unwraps it. The two network
+//round trips of the exchange come on top of the time reported here
+//Usage: SessionKeyBenchmark [messages]
+public class SessionKeyBenchmark {
+    private static final byte[] MESSAGE = "A private message of a typical length".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+        byte[] publicKey = keyPair.getPublic().getEncoded();
+        byte[] privateKey = keyPair.getPrivate().getEncoded();
+
+        long sink = 0;
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                sink += encrypt(exchange(publicKey, privateKey)).length;
+            }
+            double exchangeMicros = (System.nanoTime() - start) / 1e3 / messages;
+
+            SecretKey cached = exchange(publicKey, privateKey);
+            start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                sink += encrypt(cached).length;
+            }
+            double cachedMicros = (System.nanoTime() - start) / 1e3 / messages;
+            //The first round warms up the JIT
+            if (round == 1) {
+                System.out.printf("key exchange per message %,10.1f us%ncached session key       %,10.1f us, %,.0fx less%n",
+                        exchangeMicros, cachedMicros, exchangeMicros / cachedMicros);
+            }
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+
+    //What both clients compute for one PUBLIC_KEY and SESSION_KEY exchange, returns the sender's copy of the key
+    private static SecretKey exchange(byte[] publicKey, byte[] privateKey) throws Exception {
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        PublicKey peerPublicKey = keyFactory.generatePublic(new X509EncodedKeySpec(publicKey));
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        SecretKey sessionKey = keyGenerator.generateKey();
+        Cipher wrap = Cipher.getInstance("RSA");
+        wrap.init(Cipher.ENCRYPT_MODE, peerPublicKey);
+        byte[] wrapped = wrap.doFinal(sessionKey.getEncoded());
+
+        PrivateKey ownPrivateKey = keyFactory.generatePrivate(new PKCS8EncodedKeySpec(privateKey));
+        Cipher unwrap = Cipher.getInstance("RSA");
+        unwrap.init(Cipher.DECRYPT_MODE, ownPrivateKey);
+        return new SecretKeySpec(unwrap.doFinal(wrapped), "AES");
+    }
+
+    private static byte[] encrypt(SecretKey sessionKey) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/ECB/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, sessionKey);
+        return cipher.doFinal(MESSAGE);
+    }
+}
@@ -0,0 +1,142 @@
+package benchmarks;
+
+import Server.Session;
+import Server.SessionRegistry;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Lets thousands of threads log in, look up, broadcast to and log out users with a small pool of names, so the same
+//name is often logged in concurrently. Compares the session registry with the synchronized check-then-act HashMap
+//it replaced, and counts how often a name ended up logged in twice
+//Usage: SessionRegistryBenchmark [threads] [operations per thread] [names]
+public class SessionRegistryBenchmark {
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int names = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            run(new RegistryUsers(), threads / 4, operations, names);
+            run(new SynchronizedMapUsers(), threads / 4, operations, names);
+        }
+        report("session registry", run(new RegistryUsers(), threads, operations, names), threads, operations);
+        report("synchronized HashMap", run(new SynchronizedMapUsers(), threads, operations, names), threads, operations);
+    }
+
+    private static Result run(Users users, int threads, int operations, int names) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicLong doubleLogins = new AtomicLong();
+        for (int t = 0; t < threads; t++) {
+            Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < operations; i++) {
+                        String name = "User" + random.nextInt(names);
+                        Session session = new Session(name, null, null);
+                        if (users.login(session)) {
+                            if (!users.onlyOwner(session)) {
+                                doubleLogins.incrementAndGet();
+                            }
+                            users.lookup("user" + random.nextInt(names));
+                            users.iterate();
+                            users.logout(session);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        return new Result(System.nanoTime() - begin, doubleLogins.get());
+    }
+
+    private static void report(String name, Result result, int threads, int operations) {
+        double seconds = result.nanos() / 1e9;
+        System.out.printf("%-22s %,12.0f login attempts/s, %,d double logins%n", name, threads * (double) operations / seconds, result.doubleLogins());
+    }
+
+    private record Result(long nanos, long doubleLogins) {
+    }
+
+    private interface Users {
+        boolean login(Session session);
+
+        //Checks that no other session took the same name while this one was logged in
+        boolean onlyOwner(Session session);
+
+        Session lookup(String username);
+
+        void iterate();
+
+        void logout(Session session);
+    }
+
+    private static class RegistryUsers implements Users {
+        private final SessionRegistry registry = new SessionRegistry();
+
+        public boolean login(Session session) {
+            return registry.register(session);
+        }
+
+        public boolean onlyOwner(Session session) {
+            return registry.find(session.username()) == session;
+        }
+
+        public Session lookup(String username) {
+            return registry.find(username);
+        }
+
+        public void iterate() {
+            for (Session ignored : registry.sessions()) {
+                break;
+            }
+        }
+
+        public void logout(Session session) {
+            registry.unregister(session);
+        }
+    }
+
+    //The registry as it was before: separate contains and put calls, with the map itself made thread-safe
+    private static class SynchronizedMapUsers implements Users {
+        private final Map<String, Session> users = Collections.synchronizedMap(new HashMap<>());
+
+        public boolean login(Session session) {
+            if (users.containsKey(session.username().toLowerCase())) {
+                return false;
+            }
+            users.put(session.username().toLowerCase(), session);
+            return true;
+        }
+
+        public boolean onlyOwner(Session session) {
+            return users.get(session.username().toLowerCase()) == session;
+        }
+
+        public Session lookup(String username) {
+            return users.get(username.toLowerCase());
+        }
+
+        public void iterate() {
+            synchronized (users) {
+                for (Session ignored : users.values()) {
+                    break;
+                }
+            }
+        }
+
+        public void logout(Session session) {
+            users.remove(session.username().toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+//Starts clients in their own JVM against a stand-in server on 1337 and measures the time from starting the process to
+//the LOGIN it sends once it got the welcome message, with a new key pair every start and with a key store the first
+//start writes. The JVM's own startup is part of the time, as it is for a user. The server on 1337 must not be running
+//Usage: StartupBenchmark [starts]
+public class StartupBenchmark {
+    private static final byte[] WELCOME = "WELCOME {\"message\":\"Welcome to the java server\"}\n".getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception {
+        int starts = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        File keyStore = File.createTempFile("keystore", ".bin");
+        keyStore.delete();
+        keyStore.deleteOnExit();
+
+        try (ServerSocket server = new ServerSocket(1337)) {
+            report("new key pair", server, starts, List.of());
+            report("key store", server, starts, List.of("-Dclient.keystore=" + keyStore.getPath()));
+        }
+    }
+
+    private static void report(String name, ServerSocket server, int starts, List<String> options) throws Exception {
+        List<Double> times = new ArrayList<>();
+        //The first start warms up the disk cache
+        for (int i = 0; i <= starts; i++) {
+            double millis = start(server, options);
+            if (i > 0) {
+                times.add(millis);
+            }
+        }
+        times.sort(null);
+        System.out.printf("%-14s startup to LOGIN p50 %,6.0f ms, min %,6.0f ms, max %,6.0f ms%n",
+                name, times.get(times.size() / 2), times.get(0), times.get(times.size() - 1));
+    }
+
+    //Returns the milliseconds from starting the client to its LOGIN
+    private static double start(ServerSocket server, List<String> options) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.addAll(options);
+        command.add("Client.Client");
+        long start = System.nanoTime();
+        Process client = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+        try (OutputStream input = client.getOutputStream()) {
+            input.write("startup\n".getBytes(StandardCharsets.UTF_8));
+        }
+        try (Socket socket = server.accept()) {
+            socket.getOutputStream().write(WELCOME);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null && !line.startsWith("LOGIN")) {
+                //Nothing else is sent before LOGIN
+            }
+            if (line == null) {
+                throw new IllegalStateException("The client closed the connection before it logged in");
+            }
+            return (System.nanoTime() - start) / 1e6;
+        } finally {
+            //Closing the connection ends the client, which waits for the answer to its LOGIN
+            client.waitFor();
+        }
+    }
+}